@@ -0,0 +1,92 @@
+package de.vitagroup.num;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.Address.AddressUse;
+import org.hl7.fhir.r4.model.ContactPoint.ContactPointSystem;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.HumanName.NameUse;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Patient JSON encoding and parsing with the FHIR context {@link
+ * de.vitagroup.num.configuration.FhirServerConfigR4} and {@link BaseJpaRestfulServer} set up for
+ * the defaults of {@code application.yaml}, with and without pretty printing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FhirJsonBenchmark {
+
+  @Param({"true", "false"})
+  private boolean prettyPrint;
+
+  private FhirContext fhirContext;
+
+  private Patient patient;
+
+  private String patientJson;
+
+  @Setup
+  public void setUp() {
+    // no slim_mode: the context of BaseR4Config, narrative_mode ON_DEMAND: no narrative generator
+    fhirContext = FhirContext.forR4();
+    fhirContext
+      .getParserOptions()
+      .setDontStripVersionsFromReferencesAtPaths("AuditEvent.entity.what");
+    fhirContext.setNarrativeGenerator(null);
+
+    patient = new Patient();
+    patient.setId("Patient/123/_history/2");
+    patient.getMeta().setVersionId("2");
+    patient
+      .addIdentifier()
+      .setSystem("https://num.example.org/fhir/identifier/keycloak")
+      .setValue("6f1c3c4e-5a3b-4c52-9b7e-2b7e8f0c1d2a");
+    patient
+      .addName()
+      .setUse(NameUse.OFFICIAL)
+      .setFamily("Mustermann")
+      .addGiven("Erika")
+      .addGiven("Maria");
+    patient.setGender(AdministrativeGender.FEMALE);
+    patient.setBirthDateElement(new DateType("1964-08-12"));
+    patient.addTelecom().setSystem(ContactPointSystem.EMAIL).setValue("erika@example.org");
+    patient.addTelecom().setSystem(ContactPointSystem.PHONE).setValue("+49 30 1234567");
+    patient
+      .addAddress()
+      .setUse(AddressUse.HOME)
+      .addLine("Heidestrasse 17")
+      .setCity("Berlin")
+      .setPostalCode("10557")
+      .setCountry("DE");
+    patient.getManagingOrganization().setReference("Organization/1");
+
+    patientJson = encodePatient();
+  }
+
+  @Benchmark
+  public String encodePatient() {
+    return fhirContext.newJsonParser().setPrettyPrint(prettyPrint).encodeResourceToString(patient);
+  }
+
+  @Benchmark
+  public Patient parsePatient() {
+    return fhirContext.newJsonParser().parseResource(Patient.class, patientJson);
+  }
+}
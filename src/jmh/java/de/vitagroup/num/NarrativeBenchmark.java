@@ -0,0 +1,134 @@
+package de.vitagroup.num;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.narrative.DefaultThymeleafNarrativeGenerator;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.SimplePreResourceShowDetails;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import de.vitagroup.num.configuration.CachingNarrativeGenerator;
+import de.vitagroup.num.interceptors.NarrativeInterceptor;
+import de.vitagroup.num.properties.HapiProperties.NarrativeMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.HumanName.NameUse;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Narrative cost of a Patient create and read per {@code hapi.fhir.narrative_mode}. A create
+ * encodes the new resource for storage, a read parses the stored resource, shows it and encodes the
+ * response, with and without {@code _summary=text}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NarrativeBenchmark {
+
+  /** What HAPI encodes for {@code _summary=text} */
+  private static final Set<String> TEXT_SUMMARY_ELEMENTS =
+    new HashSet<>(Arrays.asList("*.text", "*.id", "*.meta", "*.(mandatory)"));
+
+  @Param({"OFF", "PERSIST", "ON_DEMAND"})
+  private NarrativeMode mode;
+
+  @Param({"false", "true"})
+  private boolean textRequested;
+
+  private FhirContext fhirContext;
+
+  private NarrativeInterceptor narrativeInterceptor;
+
+  private RestfulServer server;
+
+  private Patient patient;
+
+  private String storedJson;
+
+  @Setup
+  public void setUp() {
+    fhirContext = FhirContext.forR4();
+    server = new RestfulServer(fhirContext);
+    if (mode == NarrativeMode.PERSIST) {
+      fhirContext.setNarrativeGenerator(new DefaultThymeleafNarrativeGenerator());
+    } else if (mode == NarrativeMode.ON_DEMAND) {
+      narrativeInterceptor =
+        new NarrativeInterceptor(
+          new CachingNarrativeGenerator(
+            new DefaultThymeleafNarrativeGenerator(), 10000, new SimpleMeterRegistry()));
+    }
+
+    patient = new Patient();
+    patient.setId("Patient/123/_history/2");
+    patient.getMeta().setVersionId("2");
+    patient
+      .addIdentifier()
+      .setSystem("https://num.example.org/fhir/identifier/keycloak")
+      .setValue("6f1c3c4e-5a3b-4c52-9b7e-2b7e8f0c1d2a");
+    patient
+      .addName()
+      .setUse(NameUse.OFFICIAL)
+      .setFamily("Mustermann")
+      .addGiven("Erika")
+      .addGiven("Maria");
+    patient.setGender(AdministrativeGender.FEMALE);
+    patient.setBirthDateElement(new DateType("1964-08-12"));
+    patient.getManagingOrganization().setReference("Organization/1");
+
+    storedJson = create();
+  }
+
+  @Benchmark
+  public String create() {
+    // rendering fills in the narrative, so every create starts from a resource without one
+    return fhirContext.newJsonParser().encodeResourceToString(patient.copy());
+  }
+
+  @Benchmark
+  public String read() {
+    Patient stored = fhirContext.newJsonParser().parseResource(Patient.class, storedJson);
+    if (narrativeInterceptor != null) {
+      narrativeInterceptor.resourcesShown(new SimplePreResourceShowDetails(stored), readRequest());
+    }
+    IParser parser = fhirContext.newJsonParser();
+    if (textRequested) {
+      parser.setEncodeElements(TEXT_SUMMARY_ELEMENTS);
+    }
+    return parser.encodeResourceToString(stored);
+  }
+
+  private ServletRequestDetails readRequest() {
+    ServletRequestDetails requestDetails = new ServletRequestDetails(null);
+    requestDetails.setServer(server);
+    requestDetails.setRequestType(RequestTypeEnum.GET);
+    requestDetails.setRestOperationType(RestOperationTypeEnum.READ);
+    requestDetails.setResourceName(Patient.class.getSimpleName());
+    if (textRequested) {
+      requestDetails.addParameter(
+        Constants.PARAM_SUMMARY, new String[] {SummaryEnum.TEXT.getCode()});
+    }
+    return requestDetails;
+  }
+}
@@ -0,0 +1,162 @@
+package de.vitagroup.num.abac;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Consent;
+import org.hl7.fhir.r4.model.Consent.ConsentProvisionType;
+import org.hl7.fhir.r4.model.Consent.ConsentState;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Consent events as Feign encodes them for the ABAC server, single and as an outbox batch. The
+ * object mapper is built like Spring's, so {@link ConsentSerializer} gets the shared {@link
+ * FhirContext} injected.
+ *
+ * <p>{@code serializer} selects how the consent is written: {@code streaming} is {@link
+ * ConsentSerializer}, {@code string} encodes it to a String with the shared context and writes
+ * that raw, {@code legacy} is the serializer before, which also created a new R4 context per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConsentSerializerBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"streaming", "string", "legacy"})
+  private String serializer;
+
+  private ObjectMapper objectMapper;
+
+  private ConsentEvent consentEvent;
+
+  private List<ConsentEvent> consentEvents;
+
+  @Setup
+  public void setUp() {
+    AnnotationConfigApplicationContext applicationContext =
+      new AnnotationConfigApplicationContext();
+    applicationContext.registerBean(FhirContext.class, FhirContext::forR4);
+    applicationContext.refresh();
+    Jackson2ObjectMapperBuilder builder =
+      Jackson2ObjectMapperBuilder.json().applicationContext(applicationContext);
+    if ("string".equals(serializer)) {
+      builder.mixIn(ConsentEvent.class, StringConsentEventMixIn.class);
+    } else if ("legacy".equals(serializer)) {
+      builder.mixIn(ConsentEvent.class, LegacyConsentEventMixIn.class);
+    }
+    objectMapper = builder.build();
+
+    consentEvent = ConsentEvent.builder().insert(true).consent(consent("123")).build();
+    consentEvents = new ArrayList<>();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      consentEvents.add(
+        ConsentEvent.builder().insert(true).consent(consent(String.valueOf(i))).build());
+    }
+  }
+
+  @Benchmark
+  public byte[] consentEvent() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(consentEvent);
+  }
+
+  @Benchmark
+  public byte[] consentBatch() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(consentEvents);
+  }
+
+  private static Consent consent(String patientId) {
+    Consent consent = new Consent();
+    consent.setId("Consent/" + patientId);
+    consent.setStatus(ConsentState.ACTIVE);
+    consent.setScope(
+      new CodeableConcept()
+        .addCoding(
+          new Coding(
+            "http://terminology.hl7.org/CodeSystem/consentscope", "research", "Research")));
+    consent
+      .addCategory()
+      .addCoding()
+      .setSystem("http://loinc.org")
+      .setCode("57016-8");
+    consent.setPatient(new Reference("Patient/" + patientId));
+    consent.setDateTime(new Date());
+    consent.addPolicy().setUri("https://num.example.org/policies/research");
+    consent
+      .getProvision()
+      .setType(ConsentProvisionType.PERMIT)
+      .setPeriod(new Period().setStart(new Date()))
+      .addAction()
+      .addCoding()
+      .setSystem("http://terminology.hl7.org/CodeSystem/consentaction")
+      .setCode("access");
+    return consent;
+  }
+
+  /** Encodes the consent to a String first, with the shared context */
+  public static class StringConsentSerializer extends JsonSerializer<Consent> {
+
+    private final FhirContext fhirContext;
+
+    public StringConsentSerializer(FhirContext fhirContext) {
+      this.fhirContext = fhirContext;
+    }
+
+    @Override
+    public void serialize(Consent value, JsonGenerator gen, SerializerProvider serializers)
+      throws IOException {
+      gen.writeRawValue(fhirContext.newJsonParser().encodeResourceToString(value));
+    }
+  }
+
+  /** The serializer before {@link ConsentSerializer}, unchanged */
+  public static class LegacyConsentSerializer extends JsonSerializer<Consent> {
+
+    @Override
+    public void serialize(Consent value, JsonGenerator gen, SerializerProvider serializers)
+      throws IOException {
+      gen.writeRawValue(FhirContext.forR4().newJsonParser().encodeResourceToString(value));
+    }
+  }
+
+  private abstract static class StringConsentEventMixIn {
+
+    @JsonSerialize(using = StringConsentSerializer.class)
+    private Consent consent;
+  }
+
+  private abstract static class LegacyConsentEventMixIn {
+
+    @JsonSerialize(using = LegacyConsentSerializer.class)
+    private Consent consent;
+  }
+}
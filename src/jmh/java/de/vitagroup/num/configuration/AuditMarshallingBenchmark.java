@@ -0,0 +1,86 @@
+package de.vitagroup.num.configuration;
+
+import de.vitagroup.num.properties.AuditProperties;
+import de.vitagroup.num.properties.AuditProperties.Marshaller;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.codes.EventActionCode;
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.event.PatientRecordBuilder;
+import org.openehealth.ipf.commons.audit.marshal.SerializationStrategy;
+import org.openehealth.ipf.commons.audit.model.ActiveParticipantType;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.types.EventType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DICOM marshalling of a patient audit message with the strategies {@link AuditConfig} can be
+ * configured with, for a single read and for an aggregated search message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuditMarshallingBenchmark {
+
+  private static final String HL7_CODING_SYSTEM =
+    "http://terminology.hl7.org/CodeSystem/audit-event-type";
+
+  @Param({"1", "500"})
+  private int patients;
+
+  @Param({"JDOM", "STREAMING"})
+  private Marshaller marshaller;
+
+  private SerializationStrategy serializationStrategy;
+
+  private AuditMessage auditMessage;
+
+  private StringWriter writer;
+
+  @Setup
+  public void setUp() {
+    AuditProperties auditProperties = new AuditProperties();
+    auditProperties.setMarshaller(marshaller);
+    AuditContext auditContext = new AuditConfig(auditProperties).auditContext();
+    serializationStrategy = auditContext.getSerializationStrategy();
+
+    PatientRecordBuilder builder =
+      new PatientRecordBuilder(
+        EventOutcomeIndicator.Success,
+        "Patients disclosed by search",
+        EventActionCode.Read,
+        EventType.of("search-type", HL7_CODING_SYSTEM, "search-type"));
+    for (int i = 0; i < patients; i++) {
+      builder.addPatient(String.valueOf(i), "", null);
+    }
+    auditMessage =
+      builder
+        .addActiveParticipant(new ActiveParticipantType("benchmark-user", true))
+        .setAuditSource(auditContext)
+        .getMessage();
+
+    writer = new StringWriter();
+  }
+
+  @Benchmark
+  public int marshal() throws IOException {
+    writer.getBuffer().setLength(0);
+    serializationStrategy.marshal(auditMessage, writer, false);
+    return writer.getBuffer().length();
+  }
+}
@@ -0,0 +1,269 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.HumanName.NameUse;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A search bundle written through the {@link CompressionFilter} with the settings of {@code
+ * application.yaml}, the way HAPI writes it: to the servlet writer in chunks of the Jackson buffer
+ * size. Besides the time and, with {@code -prof gc}, the allocation per response, every
+ * iteration prints the bytes sent and the time to the first byte reaching the connector. The
+ * {@code pretty} encoding is the baseline of the former defaults: pretty printed JSON written
+ * without the filter.
+ *
+ * <p>The bundle is encoded before the measurement, so neither time nor allocation include the
+ * encoding, which is the same for all compact encodings and which
+ * {@link de.vitagroup.num.FhirJsonBenchmark} measures.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CompressionFilterBenchmark {
+
+  private static final int MIN_RESPONSE_SIZE = 2048;
+
+  private static final String CONTENT_TYPE = "application/fhir+json;charset=UTF-8";
+
+  /** Characters Jackson buffers before it writes to the servlet writer */
+  private static final int WRITE_CHUNK = 8000;
+
+  private static final String PRETTY = "pretty";
+
+  /** {@code Accept-Encoding} of the request, or {@code pretty} for the baseline */
+  @Param({PRETTY, "identity", "gzip", "deflate"})
+  private String encoding;
+
+  @Param({"1", "100"})
+  private int patients;
+
+  private CompressionFilter filter;
+
+  private String bundleJson;
+
+  private HttpServletRequest request;
+
+  private Connector connector;
+
+  private HttpServletResponse response;
+
+  private long responses;
+
+  private long totalBytes;
+
+  private long totalFirstByteNanos;
+
+  @Setup
+  public void setUp() {
+    filter =
+      new CompressionFilter(
+        MIN_RESPONSE_SIZE,
+        List.of("application/fhir+json", "application/fhir+xml", "application/json"));
+
+    Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET).setTotal(patients);
+    for (int i = 0; i < patients; i++) {
+      Patient patient = new Patient();
+      patient.setId("Patient/" + (1000 + i) + "/_history/1");
+      patient
+        .addIdentifier()
+        .setSystem("https://num.example.org/fhir/identifier/keycloak")
+        .setValue(String.format("6f1c3c4e-5a3b-4c52-9b7e-%012d", i * 7919L));
+      patient.addName().setUse(NameUse.OFFICIAL).setFamily("Family" + i).addGiven("Given" + i);
+      patient.setGender(i % 2 == 0 ? AdministrativeGender.FEMALE : AdministrativeGender.MALE);
+      patient.setBirthDateElement(new DateType(1940 + i % 60 + "-0" + (1 + i % 9) + "-1" + i % 10));
+      patient.getManagingOrganization().setReference("Organization/" + (1 + i % 5));
+      bundle
+        .addEntry()
+        .setFullUrl("http://localhost:8080/fhir/Patient/" + (1000 + i))
+        .setResource(patient);
+    }
+    bundleJson =
+      FhirContext.forR4()
+        .newJsonParser()
+        .setPrettyPrint(PRETTY.equals(encoding))
+        .encodeResourceToString(bundle);
+    String acceptEncoding = PRETTY.equals(encoding) ? null : encoding;
+
+    Map<String, Object> attributes = new HashMap<>();
+    request =
+      (HttpServletRequest)
+        Proxy.newProxyInstance(
+          getClass().getClassLoader(),
+          new Class<?>[] {HttpServletRequest.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getHeader":
+                return "Accept-Encoding".equalsIgnoreCase((String) args[0])
+                  ? acceptEncoding
+                  : null;
+              case "getAttribute":
+                return attributes.get(args[0]);
+              case "setAttribute":
+                attributes.put((String) args[0], args[1]);
+                return null;
+              case "removeAttribute":
+                attributes.remove(args[0]);
+                return null;
+              default:
+                return null;
+            }
+          });
+
+    connector = new Connector();
+    response = connector.response();
+  }
+
+  @Benchmark
+  public long writeBundle() throws Exception {
+    connector.reset();
+    long start = System.nanoTime();
+    FilterChain hapi =
+      (filteredRequest, filteredResponse) -> {
+        filteredResponse.setContentType(CONTENT_TYPE);
+        Writer writer = filteredResponse.getWriter();
+        for (int offset = 0; offset < bundleJson.length(); offset += WRITE_CHUNK) {
+          writer.write(bundleJson, offset, Math.min(WRITE_CHUNK, bundleJson.length() - offset));
+        }
+        writer.flush();
+      };
+    if (PRETTY.equals(encoding)) {
+      hapi.doFilter(request, response);
+    } else {
+      filter.doFilterInternal(request, response, hapi);
+    }
+    responses++;
+    totalBytes += connector.bytes;
+    totalFirstByteNanos += connector.firstByteNanos - start;
+    return connector.bytes;
+  }
+
+  @Setup(Level.Iteration)
+  public void resetTotals() {
+    responses = 0;
+    totalBytes = 0;
+    totalFirstByteNanos = 0;
+  }
+
+  /** JMH sums auxiliary counters over the iterations, the averages are printed instead */
+  @TearDown(Level.Iteration)
+  public void printTotals() {
+    System.out.printf(
+      " [%d bytes sent, first byte after %.1f us]",
+      totalBytes / Math.max(responses, 1),
+      totalFirstByteNanos / Math.max(responses, 1) / 1000d);
+  }
+
+  /** Counts what reaches the connector instead of sending it */
+  private static class Connector extends ServletOutputStream {
+
+    private final Map<String, String> headers = new HashMap<>();
+
+    private String contentType;
+
+    private PrintWriter writer;
+
+    private long bytes;
+
+    private long firstByteNanos;
+
+    void reset() {
+      headers.clear();
+      contentType = null;
+      writer = null;
+      bytes = 0;
+    }
+
+    @Override
+    public void write(int b) {
+      written(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      written(len);
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {}
+
+    private void written(int len) {
+      if (bytes == 0 && len > 0) {
+        firstByteNanos = System.nanoTime();
+      }
+      bytes += len;
+    }
+
+    HttpServletResponse response() {
+      return (HttpServletResponse)
+        Proxy.newProxyInstance(
+          getClass().getClassLoader(),
+          new Class<?>[] {HttpServletResponse.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getOutputStream":
+                return this;
+              case "getWriter":
+                if (writer == null) {
+                  writer = new PrintWriter(new OutputStreamWriter(this, StandardCharsets.UTF_8));
+                }
+                return writer;
+              case "setHeader":
+              case "addHeader":
+                headers.put((String) args[0], (String) args[1]);
+                return null;
+              case "getHeader":
+                return headers.get(args[0]);
+              case "setContentType":
+                contentType = (String) args[0];
+                return null;
+              case "getContentType":
+                return contentType;
+              case "getCharacterEncoding":
+                return "UTF-8";
+              case "isCommitted":
+                return bytes > 0;
+              default:
+                return null;
+            }
+          });
+    }
+  }
+}
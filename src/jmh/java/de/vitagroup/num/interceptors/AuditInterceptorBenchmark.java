@@ -0,0 +1,135 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import de.vitagroup.num.audit.AsyncAuditSender;
+import de.vitagroup.num.configuration.AuditConfig;
+import de.vitagroup.num.properties.AuditProperties;
+import de.vitagroup.num.properties.AuditProperties.OverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.Patient;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.DefaultAuditContext;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.queue.AuditMessageQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Audit work done on the request thread. Messages are marshalled by the sender thread into an in
+ * memory audit context instead of being sent to a syslog server; messages the sender cannot keep
+ * up with are dropped, so the queue never blocks the benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuditInterceptorBenchmark {
+
+  @Param({"10", "500"})
+  private int searchResults;
+
+  private AsyncAuditSender auditSender;
+
+  private AuditInterceptor interceptor;
+
+  private List<Patient> patients;
+
+  @Setup
+  public void setUp() {
+    AuditProperties auditProperties = new AuditProperties();
+    auditProperties.setOverflowPolicy(OverflowPolicy.DROP);
+
+    DefaultAuditContext auditContext =
+      (DefaultAuditContext) new AuditConfig(auditProperties).auditContext();
+    auditContext.setAuditMessageQueue(new InMemoryAuditMessageQueue());
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    auditSender = new AsyncAuditSender(auditContext, auditProperties, meterRegistry);
+    interceptor =
+      new AuditInterceptor(
+        auditContext,
+        auditSender,
+        auditProperties.getMaxParticipantsPerMessage(),
+        new InterceptorMetrics(meterRegistry));
+
+    patients = new ArrayList<>();
+    for (int i = 0; i < searchResults; i++) {
+      Patient patient = new Patient();
+      patient.setId(Patient.class.getSimpleName() + "/" + i);
+      patients.add(patient);
+    }
+
+    BenchmarkTokens.authenticate(BenchmarkTokens.Kind.PATIENT);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    SecurityContextHolder.clearContext();
+    auditSender.shutdown();
+  }
+
+  @Benchmark
+  public ServletRequestDetails patientRead() {
+    ServletRequestDetails requestDetails =
+      request(RestOperationTypeEnum.READ, "Patient/" + BenchmarkTokens.PATIENT_ID);
+    interceptor.completeOperationSuccess(requestDetails, null);
+    return requestDetails;
+  }
+
+  @Benchmark
+  public ServletRequestDetails patientSearch() {
+    ServletRequestDetails requestDetails =
+      request(RestOperationTypeEnum.SEARCH_TYPE, Patient.class.getSimpleName());
+    for (Patient patient : patients) {
+      interceptor.willSeeResource(requestDetails, patient, null);
+    }
+    interceptor.completeOperationSuccess(requestDetails, null);
+    return requestDetails;
+  }
+
+  private static ServletRequestDetails request(RestOperationTypeEnum operation, String path) {
+    ServletRequestDetails requestDetails = new ServletRequestDetails(null);
+    requestDetails.setRequestType(RequestTypeEnum.GET);
+    requestDetails.setRestOperationType(operation);
+    requestDetails.setRequestPath(path);
+    return requestDetails;
+  }
+
+  /** Marshals like the syslog transport does, but writes nowhere */
+  private static class InMemoryAuditMessageQueue implements AuditMessageQueue {
+
+    @Override
+    public void audit(AuditContext auditContext, AuditMessage... auditMessages) {
+      for (AuditMessage auditMessage : auditMessages) {
+        try {
+          auditContext
+            .getSerializationStrategy()
+            .marshal(auditMessage, Writer.nullWriter(), false);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+  }
+}
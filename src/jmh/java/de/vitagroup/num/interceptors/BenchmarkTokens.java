@@ -0,0 +1,47 @@
+package de.vitagroup.num.interceptors;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/** Keycloak like tokens for the interceptor benchmarks, set on the calling thread */
+public final class BenchmarkTokens {
+
+  static final String PATIENT_ID = "123";
+
+  public enum Kind {
+    PATIENT,
+    SMART_ON_FHIR,
+    ADMIN
+  }
+
+  private BenchmarkTokens() {}
+
+  static void authenticate(Kind kind) {
+    SecurityContextHolder.getContext().setAuthentication(token(kind, PATIENT_ID));
+  }
+
+  static JwtAuthenticationToken token(Kind kind, String patientId) {
+    Jwt.Builder jwt =
+      Jwt.withTokenValue("benchmark").header("alg", "RS256").subject("benchmark-user");
+
+    switch (kind) {
+      case PATIENT:
+        jwt.claim("patient_id", patientId);
+        break;
+      case SMART_ON_FHIR:
+        jwt.claim("patient", patientId);
+        break;
+      default:
+        JSONArray roles = new JSONArray();
+        roles.add("admin");
+        JSONObject realmAccess = new JSONObject();
+        realmAccess.put("roles", roles);
+        jwt.claim("realm_access", realmAccess);
+    }
+
+    return new JwtAuthenticationToken(jwt.build());
+  }
+}
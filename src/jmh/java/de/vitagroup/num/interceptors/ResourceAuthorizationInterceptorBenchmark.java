@@ -0,0 +1,125 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor.Verdict;
+import ca.uhn.fhir.rest.server.interceptor.auth.IAuthRule;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Rule list lookup and HAPI rule evaluation for a patient read, per token type. Every invocation
+ * uses a new request, like a real request does.
+ *
+ * <p>{@code buildRuleListMiss} builds the rule list of a patient that is not cached: it cycles
+ * through tokens of {@value #MISS_PATIENTS} patients against a rule cache holding one entry. Admin
+ * rules are never cached per patient, so it measures the same as {@code buildRuleList} for them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResourceAuthorizationInterceptorBenchmark {
+
+  private static final int MISS_PATIENTS = 1024;
+
+  @Param({"PATIENT", "SMART_ON_FHIR", "ADMIN"})
+  private BenchmarkTokens.Kind token;
+
+  private ResourceAuthorizationInterceptor interceptor;
+
+  private ResourceAuthorizationInterceptor missInterceptor;
+
+  private Authentication[] missTokens;
+
+  private int nextMissToken;
+
+  private RestfulServer server;
+
+  private IdType patientId;
+
+  private Patient patient;
+
+  @Setup
+  public void setUp() {
+    server = new RestfulServer(FhirContext.forR4());
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    interceptor =
+      new ResourceAuthorizationInterceptor(
+        10000, meterRegistry, new InterceptorMetrics(meterRegistry));
+    missInterceptor =
+      new ResourceAuthorizationInterceptor(1, meterRegistry, new InterceptorMetrics(meterRegistry));
+    missTokens = new Authentication[MISS_PATIENTS];
+    for (int i = 0; i < MISS_PATIENTS; i++) {
+      missTokens[i] = BenchmarkTokens.token(token, String.valueOf(i));
+    }
+    patientId = new IdType(Patient.class.getSimpleName(), BenchmarkTokens.PATIENT_ID);
+    patient = new Patient();
+    patient.setId(patientId);
+
+    // thread scoped state is set up by the benchmark thread itself
+    BenchmarkTokens.authenticate(token);
+  }
+
+  @TearDown
+  public void tearDown() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Benchmark
+  public List<IAuthRule> buildRuleList() {
+    return interceptor.buildRuleList(patientReadRequest());
+  }
+
+  @Benchmark
+  public List<IAuthRule> buildRuleListMiss() {
+    SecurityContextHolder.getContext().setAuthentication(missTokens[nextMissToken]);
+    nextMissToken = (nextMissToken + 1) % MISS_PATIENTS;
+    return missInterceptor.buildRuleList(patientReadRequest());
+  }
+
+  @Benchmark
+  public Verdict patientRead() {
+    return interceptor.applyRulesAndReturnDecision(
+      RestOperationTypeEnum.READ,
+      patientReadRequest(),
+      null,
+      patientId,
+      patient,
+      Pointcut.SERVER_OUTGOING_RESPONSE);
+  }
+
+  private ServletRequestDetails patientReadRequest() {
+    ServletRequestDetails requestDetails = new ServletRequestDetails(null);
+    requestDetails.setServer(server);
+    requestDetails.setRequestType(RequestTypeEnum.GET);
+    requestDetails.setRestOperationType(RestOperationTypeEnum.READ);
+    requestDetails.setResourceName(Patient.class.getSimpleName());
+    requestDetails.setRequestPath(patientId.getValue());
+    requestDetails.setId(patientId);
+    return requestDetails;
+  }
+}
@@ -0,0 +1,51 @@
+package de.vitagroup.num.loadtest;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Accepts every consent event the service sends to ABAC and counts the calls */
+class FakeAbacServer implements AutoCloseable {
+
+  private final HttpServer server;
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong bytes = new AtomicLong();
+
+  FakeAbacServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.createContext(
+      "/",
+      exchange -> {
+        try (InputStream body = exchange.getRequestBody()) {
+          bytes.addAndGet(body.readAllBytes().length);
+        }
+        requests.incrementAndGet();
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+      });
+    server.start();
+  }
+
+  String url() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  long requests() {
+    return requests.get();
+  }
+
+  long bytes() {
+    return bytes.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
@@ -0,0 +1,65 @@
+package de.vitagroup.num.loadtest;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/** Latency distribution, throughput and errors per operation */
+class LatencyReport {
+
+  private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+  private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+  LatencyReport() {
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new ConcurrentHistogram(3));
+      errors.put(operation, new AtomicLong());
+    }
+  }
+
+  void record(Operation operation, long latencyNanos, int status) {
+    if (status >= 200 && status < 300) {
+      latencies.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    } else {
+      errors.get(operation).incrementAndGet();
+    }
+  }
+
+  void error(Operation operation) {
+    errors.get(operation).incrementAndGet();
+  }
+
+  void print(PrintStream out, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    long total = 0;
+
+    out.printf(
+      "%-28s %10s %8s %10s %10s %10s %10s %10s%n",
+      "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+    for (Operation operation : Operation.values()) {
+      Histogram histogram = latencies.get(operation);
+      long count = histogram.getTotalCount();
+      total += count;
+      out.printf(
+        "%-28s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+        operation,
+        count,
+        errors.get(operation).get(),
+        count / seconds,
+        millis(histogram.getValueAtPercentile(50)),
+        millis(histogram.getValueAtPercentile(99)),
+        millis(histogram.getValueAtPercentile(99.9)),
+        millis(histogram.getMaxValue()));
+    }
+    out.printf("%-28s %10d %8s %10.1f%n", "total", total, "", total / seconds);
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+}
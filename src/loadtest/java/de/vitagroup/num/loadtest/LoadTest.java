@@ -0,0 +1,134 @@
+package de.vitagroup.num.loadtest;
+
+import de.vitagroup.num.Application;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Starts the service against local stand-ins for Postgres (an in-memory H2 in its native mode),
+ * ABAC, the ATNA syslog repository and Keycloak, then drives the request mix of {@link Operation}
+ * with a fixed number of concurrent users and prints latency percentiles and throughput per
+ * operation.
+ *
+ * <p>Settings are read from system properties: {@code loadtest.users}, {@code
+ * loadtest.patients}, {@code loadtest.warmup-seconds} and {@code loadtest.duration-seconds}.
+ */
+public final class LoadTest {
+
+  private static final String H2_URL = "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1";
+
+  private LoadTest() {}
+
+  public static void main(String[] args) throws Exception {
+    int users = Integer.getInteger("loadtest.users", 16);
+    int patients = Integer.getInteger("loadtest.patients", 200);
+    long warmupSeconds = Long.getLong("loadtest.warmup-seconds", 15);
+    long durationSeconds = Long.getLong("loadtest.duration-seconds", 60);
+
+    try (TokenIssuer tokenIssuer = new TokenIssuer();
+      FakeAbacServer abac = new FakeAbacServer();
+      SyslogSink syslog = new SyslogSink();
+      ConfigurableApplicationContext application =
+        SpringApplication.run(
+          Application.class, applicationArguments(tokenIssuer, abac, syslog))) {
+
+      int port = ((WebServerApplicationContext) application).getWebServer().getPort();
+      Workload workload = new Workload("http://localhost:" + port + "/fhir", tokenIssuer);
+      workload.seed(patients);
+
+      LatencyReport report = new LatencyReport();
+      long elapsedNanos = run(workload, report, users, warmupSeconds, durationSeconds);
+
+      System.out.printf(
+        "%n%d users, %d seeded patients, %d s measured after %d s warmup%n%n",
+        users, patients, durationSeconds, warmupSeconds);
+      report.print(System.out, elapsedNanos);
+      System.out.printf(
+        "%nABAC stand-in: %d requests, %d bytes%nSyslog stand-in: %d messages, %d bytes%n",
+        abac.requests(), abac.bytes(), syslog.messages(), syslog.bytes());
+    }
+  }
+
+  static String[] applicationArguments(
+    TokenIssuer tokenIssuer, FakeAbacServer abac, SyslogSink syslog) {
+    // command line arguments take precedence over application.yaml
+    List<String> arguments = new ArrayList<>();
+    arguments.add("--server.port=0");
+    arguments.add("--management.server.port=0");
+    arguments.add("--spring.datasource.url=" + H2_URL);
+    arguments.add("--spring.datasource.driver-class-name=org.h2.Driver");
+    arguments.add("--spring.datasource.username=sa");
+    arguments.add("--spring.datasource.password=");
+    arguments.add(
+      "--spring.security.oauth2.resourceserver.jwt.jwk-set-uri=" + tokenIssuer.jwkSetUri());
+    arguments.add("--abac.url=" + abac.url());
+    arguments.add("--atna.audit.host=localhost");
+    arguments.add("--atna.audit.port=" + syslog.port());
+    return arguments.toArray(new String[0]);
+  }
+
+  /** Runs the users until the end of the measurement, returns the measured time */
+  private static long run(
+    Workload workload,
+    LatencyReport report,
+    int users,
+    long warmupSeconds,
+    long durationSeconds)
+    throws InterruptedException {
+    LoadState state = new LoadState();
+    ExecutorService executor =
+      Executors.newFixedThreadPool(users, new CustomizableThreadFactory("loadtest-user-"));
+    for (int i = 0; i < users; i++) {
+      executor.execute(() -> user(workload, report, state));
+    }
+
+    TimeUnit.SECONDS.sleep(warmupSeconds);
+    state.recording = true;
+    long start = System.nanoTime();
+    TimeUnit.SECONDS.sleep(durationSeconds);
+    state.running = false;
+    long elapsedNanos = System.nanoTime() - start;
+
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    return elapsedNanos;
+  }
+
+  private static void user(Workload workload, LatencyReport report, LoadState state) {
+    Random random = ThreadLocalRandom.current();
+    while (state.running) {
+      Operation operation = Operation.pick(random);
+      long start = System.nanoTime();
+      try {
+        int status = workload.execute(operation, random);
+        if (state.recording && state.running) {
+          report.record(operation, System.nanoTime() - start, status);
+        }
+      } catch (IOException e) {
+        if (state.recording) {
+          report.error(operation);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static class LoadState {
+
+    private volatile boolean recording;
+
+    private volatile boolean running = true;
+  }
+}
@@ -0,0 +1,48 @@
+package de.vitagroup.num.loadtest;
+
+import java.util.Random;
+
+/** Requests of the load mix, weighted by how often they are sent relative to each other */
+enum Operation {
+  /** Keycloak creating the patient of a newly registered user */
+  KEYCLOAK_PATIENT_CREATE(5),
+  /** Keycloak finding the patient of a user at login, by identifier through $lookup */
+  KEYCLOAK_PATIENT_LOOKUP(20),
+  /** Patient app reading the own patient resource */
+  PATIENT_SELF_READ(30),
+  /** SMART on FHIR app reading the patient it was launched for */
+  SMART_ON_FHIR_PATIENT_READ(10),
+  CONSENT_CREATE(12),
+  CONSENT_READ(13),
+  CONSENT_UPDATE(7),
+  CONSENT_DELETE(3);
+
+  private static final Operation[] OPERATIONS = values();
+
+  private static final int TOTAL_WEIGHT = totalWeight();
+
+  private final int weight;
+
+  Operation(int weight) {
+    this.weight = weight;
+  }
+
+  static Operation pick(Random random) {
+    int value = random.nextInt(TOTAL_WEIGHT);
+    for (Operation operation : OPERATIONS) {
+      value -= operation.weight;
+      if (value < 0) {
+        return operation;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  private static int totalWeight() {
+    int total = 0;
+    for (Operation operation : values()) {
+      total += operation.weight;
+    }
+    return total;
+  }
+}
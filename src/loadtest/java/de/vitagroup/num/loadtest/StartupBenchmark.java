@@ -0,0 +1,112 @@
+package de.vitagroup.num.loadtest;
+
+import de.vitagroup.num.Application;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the service against the stand-ins of {@link LoadTest} in fresh JVMs, with and without
+ * {@code hapi.fhir.slim_mode}, and prints the median startup time, the heap in use after a full
+ * collection and the number of loaded classes.
+ *
+ * <p>The number of starts per mode is read from the system property {@code startup.runs}.
+ */
+public final class StartupBenchmark {
+
+  private static final String RESULT_PREFIX = "startup-result ";
+
+  private StartupBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 2 && "run".equals(args[0])) {
+      start(Boolean.parseBoolean(args[1]));
+      return;
+    }
+
+    int runs = Integer.getInteger("startup.runs", 3);
+    System.out.printf("%n%-10s %12s %12s %10s%n", "slim_mode", "startup ms", "heap MiB", "classes");
+    for (boolean slimMode : new boolean[] {false, true}) {
+      List<long[]> results = new ArrayList<>();
+      for (int i = 0; i < runs; i++) {
+        results.add(fork(slimMode));
+      }
+      System.out.printf(
+        "%-10s %12d %12d %10d%n",
+        slimMode,
+        median(results, 0),
+        median(results, 1) / (1024 * 1024),
+        median(results, 2));
+    }
+  }
+
+  /** Runs one start in a new JVM, returns startup millis, used heap bytes and loaded classes */
+  private static long[] fork(boolean slimMode) throws IOException, InterruptedException {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    Process process =
+      new ProcessBuilder(
+        java,
+        "-cp",
+        System.getProperty("java.class.path"),
+        StartupBenchmark.class.getName(),
+        "run",
+        String.valueOf(slimMode))
+        .redirectErrorStream(true)
+        .start();
+
+    long[] result = null;
+    try (BufferedReader output =
+      new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = output.readLine()) != null) {
+        if (line.startsWith(RESULT_PREFIX)) {
+          result =
+            Arrays.stream(line.substring(RESULT_PREFIX.length()).split(" "))
+              .mapToLong(Long::parseLong)
+              .toArray();
+        }
+      }
+    }
+    if (process.waitFor() != 0 || result == null) {
+      throw new IllegalStateException("Startup with slim_mode=" + slimMode + " failed");
+    }
+    return result;
+  }
+
+  private static void start(boolean slimMode) throws Exception {
+    try (TokenIssuer tokenIssuer = new TokenIssuer();
+      FakeAbacServer abac = new FakeAbacServer();
+      SyslogSink syslog = new SyslogSink()) {
+
+      List<String> arguments =
+        new ArrayList<>(Arrays.asList(LoadTest.applicationArguments(tokenIssuer, abac, syslog)));
+      arguments.add("--hapi.fhir.slim_mode=" + slimMode);
+
+      try (ConfigurableApplicationContext application =
+        SpringApplication.run(Application.class, arguments.toArray(new String[0]))) {
+        long startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.gc();
+        long usedHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long loadedClasses = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        System.out.println(RESULT_PREFIX + startupMillis + " " + usedHeap + " " + loadedClasses);
+      }
+    }
+  }
+
+  private static long median(List<long[]> results, int index) {
+    List<Long> values = new ArrayList<>();
+    results.forEach(result -> values.add(result[index]));
+    Collections.sort(values);
+    return values.get(values.size() / 2);
+  }
+}
@@ -0,0 +1,59 @@
+package de.vitagroup.num.loadtest;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** UDP syslog receiver standing in for the ATNA audit repository, counts what arrives */
+class SyslogSink implements AutoCloseable {
+
+  private static final int MAX_DATAGRAM_SIZE = 65507;
+
+  private final DatagramSocket socket;
+
+  private final AtomicLong messages = new AtomicLong();
+
+  private final AtomicLong bytes = new AtomicLong();
+
+  SyslogSink() throws IOException {
+    socket = new DatagramSocket(0, InetAddress.getByName("localhost"));
+    socket.setReceiveBufferSize(4 * 1024 * 1024);
+
+    Thread receiver = new Thread(this::receive, "syslog-sink");
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+  int port() {
+    return socket.getLocalPort();
+  }
+
+  long messages() {
+    return messages.get();
+  }
+
+  long bytes() {
+    return bytes.get();
+  }
+
+  @Override
+  public void close() {
+    socket.close();
+  }
+
+  private void receive() {
+    DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM_SIZE], MAX_DATAGRAM_SIZE);
+    while (!socket.isClosed()) {
+      try {
+        socket.receive(packet);
+        messages.incrementAndGet();
+        bytes.addAndGet(packet.getLength());
+      } catch (IOException e) {
+        // socket closed
+        return;
+      }
+    }
+  }
+}
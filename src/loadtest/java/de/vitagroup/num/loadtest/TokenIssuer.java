@@ -0,0 +1,113 @@
+package de.vitagroup.num.loadtest;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Stands in for Keycloak: serves a JWK set and mints tokens with the claims the service reads,
+ * signed with a key generated on startup.
+ */
+class TokenIssuer implements AutoCloseable {
+
+  private static final String JWKS_PATH = "/auth/realms/loadtest/protocol/openid-connect/certs";
+
+  private static final Duration TOKEN_LIFETIME = Duration.ofHours(12);
+
+  private final RSAKey signingKey;
+
+  private final RSASSASigner signer;
+
+  private final HttpServer server;
+
+  TokenIssuer() throws IOException, JOSEException {
+    signingKey =
+      new RSAKeyGenerator(2048)
+        .keyID(UUID.randomUUID().toString())
+        .keyUse(KeyUse.SIGNATURE)
+        .generate();
+    signer = new RSASSASigner(signingKey);
+
+    byte[] jwkSet =
+      new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+      JWKS_PATH,
+      exchange -> {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, jwkSet.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+          body.write(jwkSet);
+        }
+      });
+    server.start();
+  }
+
+  String jwkSetUri() {
+    return "http://localhost:" + server.getAddress().getPort() + JWKS_PATH;
+  }
+
+  /** Token of a registered user, as issued after the patient was linked to the account */
+  String patientToken(String patientId) {
+    return sign(claims("patient-" + patientId).claim("patient_id", patientId));
+  }
+
+  /** Token of a SMART on FHIR app launched for the given patient */
+  String smartOnFhirToken(String patientId) {
+    return sign(claims("sof-" + patientId).claim("patient", patientId));
+  }
+
+  /** Token Keycloak itself uses to create and look up patients */
+  String adminToken() {
+    return sign(
+      claims("keycloak")
+        .claim(
+          "realm_access",
+          Collections.singletonMap("roles", Collections.singletonList("admin"))));
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private JWTClaimsSet.Builder claims(String userName) {
+    Instant now = Instant.now();
+    return new JWTClaimsSet.Builder()
+      .issuer("http://localhost/auth/realms/loadtest")
+      .subject(userName)
+      .claim("preferred_username", userName)
+      .issueTime(Date.from(now))
+      .expirationTime(Date.from(now.plus(TOKEN_LIFETIME)));
+  }
+
+  private String sign(JWTClaimsSet.Builder claims) {
+    SignedJWT jwt =
+      new SignedJWT(
+        new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(),
+        claims.build());
+    try {
+      jwt.sign(signer);
+    } catch (JOSEException e) {
+      throw new IllegalStateException("Could not sign token", e);
+    }
+    return jwt.serialize();
+  }
+}
@@ -0,0 +1,226 @@
+package de.vitagroup.num.loadtest;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Consent;
+import org.hl7.fhir.r4.model.Consent.ConsentProvisionType;
+import org.hl7.fhir.r4.model.Consent.ConsentState;
+import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/** Sends the requests of the load mix the way Keycloak and the patient apps do */
+class Workload {
+
+  private static final String KEYCLOAK_IDENTIFIER_SYSTEM = "https://num.example.org/keycloak";
+
+  private static final String FHIR_JSON = "application/fhir+json";
+
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+  private final String baseUrl;
+
+  private final TokenIssuer tokenIssuer;
+
+  private final String adminToken;
+
+  private final HttpClient httpClient;
+
+  private final FhirContext fhirContext = FhirContext.forR4();
+
+  private final List<SeededPatient> patients = new ArrayList<>();
+
+  Workload(String baseUrl, TokenIssuer tokenIssuer) {
+    this.baseUrl = baseUrl;
+    this.tokenIssuer = tokenIssuer;
+    this.adminToken = tokenIssuer.adminToken();
+
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("loadtest-http-");
+    threadFactory.setDaemon(true);
+    this.httpClient =
+      HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(REQUEST_TIMEOUT)
+        .executor(Executors.newCachedThreadPool(threadFactory))
+        .build();
+  }
+
+  /** Registers the patients the patient and consent requests work on */
+  void seed(int patientCount) throws IOException, InterruptedException {
+    for (int i = 0; i < patientCount; i++) {
+      String identifier = UUID.randomUUID().toString();
+      HttpResponse<String> response = send(createPatientRequest(identifier));
+      if (response.statusCode() != 201) {
+        throw new IllegalStateException(
+          "Seeding patients failed with " + response.statusCode() + ": " + response.body());
+      }
+      String patientId = createdId(response);
+      patients.add(
+        new SeededPatient(
+          patientId,
+          identifier,
+          tokenIssuer.patientToken(patientId),
+          tokenIssuer.smartOnFhirToken(patientId)));
+    }
+  }
+
+  /** Sends one request of the given kind, returns the HTTP status */
+  int execute(Operation operation, Random random) throws IOException, InterruptedException {
+    SeededPatient patient = patients.get(random.nextInt(patients.size()));
+
+    switch (operation) {
+      case KEYCLOAK_PATIENT_CREATE:
+        return send(createPatientRequest(UUID.randomUUID().toString())).statusCode();
+      case KEYCLOAK_PATIENT_LOOKUP:
+        return lookupPatient(patient);
+      case PATIENT_SELF_READ:
+        return send(request("Patient/" + patient.id, patient.token).GET()).statusCode();
+      case SMART_ON_FHIR_PATIENT_READ:
+        return send(request("Patient/" + patient.id, patient.smartOnFhirToken).GET())
+          .statusCode();
+      case CONSENT_CREATE:
+        return createConsent(patient);
+      case CONSENT_READ:
+      case CONSENT_UPDATE:
+      case CONSENT_DELETE:
+        return consentOperation(operation, patient);
+      default:
+        throw new IllegalArgumentException(operation.name());
+    }
+  }
+
+  private int lookupPatient(SeededPatient patient) throws IOException, InterruptedException {
+    String identifier =
+      URLEncoder.encode(
+        KEYCLOAK_IDENTIFIER_SYSTEM + "|" + patient.identifier, StandardCharsets.UTF_8);
+    return send(request("Patient/$lookup?identifier=" + identifier, adminToken).GET())
+      .statusCode();
+  }
+
+  private int consentOperation(Operation operation, SeededPatient patient)
+    throws IOException, InterruptedException {
+    String consentId =
+      operation == Operation.CONSENT_DELETE
+        ? patient.consentIds.pollFirst()
+        : patient.consentIds.peekLast();
+    if (consentId == null) {
+      // nothing to work on yet for this patient
+      return createConsent(patient);
+    }
+
+    String path = "Consent/" + consentId;
+    switch (operation) {
+      case CONSENT_READ:
+        return send(request(path, patient.token).GET()).statusCode();
+      case CONSENT_UPDATE:
+        Consent consent = consent(patient);
+        consent.setId(consentId);
+        return send(request(path, patient.token).PUT(body(consent))).statusCode();
+      default:
+        return send(request(path, patient.token).DELETE()).statusCode();
+    }
+  }
+
+  private int createConsent(SeededPatient patient) throws IOException, InterruptedException {
+    HttpResponse<String> response =
+      send(request("Consent", patient.token).POST(body(consent(patient))));
+    if (response.statusCode() == 201) {
+      patient.consentIds.addLast(createdId(response));
+    }
+    return response.statusCode();
+  }
+
+  private HttpRequest.Builder createPatientRequest(String identifier) {
+    Patient patient = new Patient();
+    patient.addIdentifier().setSystem(KEYCLOAK_IDENTIFIER_SYSTEM).setValue(identifier);
+    patient.addName().setFamily("Loadtest").addGiven(identifier.substring(0, 8));
+    patient.setGender(AdministrativeGender.UNKNOWN);
+    patient.addTelecom().setValue(identifier + "@example.org");
+    return request("Patient", adminToken).POST(body(patient));
+  }
+
+  private Consent consent(SeededPatient patient) {
+    Consent consent = new Consent();
+    consent.setStatus(ConsentState.ACTIVE);
+    consent.setScope(
+      new CodeableConcept()
+        .addCoding(
+          new Coding(
+            "http://terminology.hl7.org/CodeSystem/consentscope", "research", "Research")));
+    consent.addCategory().addCoding().setSystem("http://loinc.org").setCode("57016-8");
+    consent.setPatient(new Reference("Patient/" + patient.id));
+    consent.setDateTime(new Date());
+    consent.getProvision().setType(ConsentProvisionType.PERMIT);
+    return consent;
+  }
+
+  private HttpRequest.Builder request(String path, String token) {
+    return HttpRequest.newBuilder(URI.create(baseUrl + "/" + path))
+      .timeout(REQUEST_TIMEOUT)
+      .header("Authorization", "Bearer " + token)
+      .header("Accept", FHIR_JSON)
+      .header("Content-Type", FHIR_JSON);
+  }
+
+  private HttpRequest.BodyPublisher body(IBaseResource resource) {
+    IParser parser = fhirContext.newJsonParser();
+    return BodyPublishers.ofString(parser.encodeResourceToString(resource));
+  }
+
+  private HttpResponse<String> send(HttpRequest.Builder request)
+    throws IOException, InterruptedException {
+    return httpClient.send(request.build(), BodyHandlers.ofString());
+  }
+
+  private static String createdId(HttpResponse<String> response) {
+    String location =
+      response
+        .headers()
+        .firstValue("Location")
+        .orElseThrow(() -> new IllegalStateException("Created resource without location"));
+    return new IdType(location).getIdPart();
+  }
+
+  private static class SeededPatient {
+
+    private final String id;
+
+    private final String identifier;
+
+    private final String token;
+
+    private final String smartOnFhirToken;
+
+    private final Deque<String> consentIds = new ConcurrentLinkedDeque<>();
+
+    SeededPatient(String id, String identifier, String token, String smartOnFhirToken) {
+      this.id = id;
+      this.identifier = identifier;
+      this.token = token;
+      this.smartOnFhirToken = smartOnFhirToken;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package de.vitagroup.num;
 
+import de.vitagroup.num.configuration.StartupReport;
 import de.vitagroup.num.properties.HibernateProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
@@ -7,24 +8,35 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+@EnableScheduling
 @EnableFeignClients
 @EnableConfigurationProperties({HibernateProperties.class})
 @SpringBootApplication(exclude = {ElasticsearchRestClientAutoConfiguration.class})
 public class Application extends SpringBootServletInitializer {
 
+  /** Enough for every bean instantiation of a boot, the steps are drained once it is ready */
+  private static final int STARTUP_STEPS = 10000;
+
   @Autowired
   AutowireCapableBeanFactory beanFactory;
 
   public static void main(String[] args) {
-    SpringApplication.run(Application.class, args);
+    BufferingApplicationStartup applicationStartup = new BufferingApplicationStartup(STARTUP_STEPS);
+    applicationStartup.addFilter(StartupReport::isReported);
+
+    SpringApplication application = new SpringApplication(Application.class);
+    application.setApplicationStartup(applicationStartup);
+    application.run(args);
   }
 
   @Override
@@ -14,16 +14,36 @@ import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.consent.ConsentInterceptor;
 import ca.uhn.fhir.rest.server.provider.ResourceProviderFactory;
-import de.vitagroup.num.abac.AbacFeign;
+import de.vitagroup.num.abac.ConsentOutbox;
+import de.vitagroup.num.audit.AsyncAuditSender;
+import de.vitagroup.num.configuration.CachingNarrativeGenerator;
+import de.vitagroup.num.configuration.ResourceVersionMap;
+import de.vitagroup.num.configuration.StartupReport;
 import de.vitagroup.num.interceptors.AuditInterceptor;
+import de.vitagroup.num.interceptors.CapabilityStatementInterceptor;
+import de.vitagroup.num.interceptors.ConditionalReadInterceptor;
+import de.vitagroup.num.interceptors.InterceptorMetrics;
+import de.vitagroup.num.interceptors.NarrativeInterceptor;
+import de.vitagroup.num.interceptors.ReadReplicaInterceptor;
 import de.vitagroup.num.interceptors.ResourceAuthorizationInterceptor;
 import de.vitagroup.num.interceptors.ResourceInterceptor;
+import de.vitagroup.num.properties.AuditProperties;
 import de.vitagroup.num.properties.HapiProperties;
+import de.vitagroup.num.properties.ReadReplicaProperties;
+import de.vitagroup.num.providers.BulkExportProvider;
+import de.vitagroup.num.providers.KeysetSearchProvider;
+import de.vitagroup.num.providers.MassReindexProvider;
+import de.vitagroup.num.providers.PatientImportProvider;
+import de.vitagroup.num.providers.PatientLookupProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.util.List;
 import javax.servlet.ServletException;
 import lombok.NoArgsConstructor;
 import org.openehealth.ipf.commons.audit.AuditContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
 
 @NoArgsConstructor
 public class BaseJpaRestfulServer extends RestfulServer {
@@ -53,13 +73,58 @@ public class BaseJpaRestfulServer extends RestfulServer {
   private HapiProperties hapiProperties;
 
   @Autowired
-  private AbacFeign abacFeign;
+  private ConsentOutbox consentOutbox;
 
   @Autowired
   private AuditContext auditContext;
 
+  @Autowired
+  private AsyncAuditSender auditSender;
+
+  @Autowired
+  private AuditProperties auditProperties;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private InterceptorMetrics interceptorMetrics;
+
+  @Autowired
+  private PatientLookupProvider patientLookupProvider;
+
+  @Autowired
+  private PatientImportProvider patientImportProvider;
+
+  @Autowired
+  private BulkExportProvider bulkExportProvider;
+
+  @Autowired
+  private MassReindexProvider massReindexProvider;
+
+  @Autowired
+  private KeysetSearchProvider keysetSearchProvider;
+
+  @Autowired
+  private ReadReplicaProperties readReplicaProperties;
+
+  @Autowired
+  private ResourceVersionMap resourceVersionMap;
+
+  @Autowired
+  private ApplicationStartup applicationStartup;
+
   @Override
   protected void initialize() throws ServletException {
+    StartupStep startupStep = applicationStartup.start(StartupReport.SERVER_INITIALIZE_STEP);
+    try {
+      initializeServer();
+    } finally {
+      startupStep.end();
+    }
+  }
+
+  private void initializeServer() throws ServletException {
     super.initialize();
 
     List<String> supportedResourceTypes = hapiProperties.getSupportedResourceTypes();
@@ -72,9 +137,34 @@ public class BaseJpaRestfulServer extends RestfulServer {
     setFhirContext(fhirSystemDao.getContext());
     registerProviders(resourceProviders.createProviders());
     registerProvider(jpaSystemProvider);
-    registerInterceptor(new ConsentInterceptor(new AuditInterceptor(auditContext)));
-    registerInterceptor(new ResourceInterceptor(abacFeign));
-    registerInterceptor(new ResourceAuthorizationInterceptor());
+    registerProvider(patientLookupProvider);
+    registerProvider(patientImportProvider);
+    registerProvider(bulkExportProvider);
+    registerProvider(massReindexProvider);
+    registerProvider(keysetSearchProvider);
+    registerInterceptor(
+      new ConsentInterceptor(
+        new AuditInterceptor(
+          auditContext,
+          auditSender,
+          auditProperties.getMaxParticipantsPerMessage(),
+          interceptorMetrics)));
+    registerInterceptor(new ResourceInterceptor(consentOutbox, interceptorMetrics));
+    ResourceAuthorizationInterceptor authorizationInterceptor =
+      new ResourceAuthorizationInterceptor(
+        hapiProperties.getAuthorization_rule_cache_size(), meterRegistry, interceptorMetrics);
+    registerInterceptor(authorizationInterceptor);
+    if (hapiProperties.getVersion_map_enabled()) {
+      // after the authorization interceptor, its hook on the same pointcut has to run first
+      registerInterceptor(
+        new ConditionalReadInterceptor(resourceVersionMap, authorizationInterceptor));
+    }
+    if (readReplicaProperties.isEnabled()) {
+      registerInterceptor(
+        new ReadReplicaInterceptor(
+          Duration.ofSeconds(readReplicaProperties.getStickySeconds()),
+          readReplicaProperties.getStickyUsers()));
+    }
 
     FhirVersionEnum fhirVersion = fhirSystemDao.getContext().getVersion().getVersion();
 
@@ -82,14 +172,39 @@ public class BaseJpaRestfulServer extends RestfulServer {
       JpaConformanceProviderR4 confProvider =
         new JpaConformanceProviderR4(this, fhirSystemDao, daoConfig, searchParamRegistry);
       confProvider.setImplementationDescription("HAPI FHIR R4 Server");
+      // resource counts would change the cached statement with every write
+      confProvider.setIncludeResourceCounts(false);
       setServerConformanceProvider(confProvider);
+      registerInterceptor(
+        new CapabilityStatementInterceptor(
+          this,
+          confProvider,
+          searchParamRegistry,
+          hapiProperties.getMetadata_max_age_seconds(),
+          hapiProperties.getMetadata_server_bases()));
     } else {
       throw new IllegalStateException();
     }
 
     FhirContext ctx = getFhirContext();
-    ctx.setNarrativeGenerator(new DefaultThymeleafNarrativeGenerator());
-    setDefaultPrettyPrint(true);
+    switch (hapiProperties.getNarrative_mode()) {
+      case PERSIST:
+        // the stored narrative is encoded as it is, so each version is only rendered once
+        ctx.setNarrativeGenerator(new DefaultThymeleafNarrativeGenerator());
+        break;
+      case ON_DEMAND:
+        ctx.setNarrativeGenerator(null);
+        registerInterceptor(
+          new NarrativeInterceptor(
+            new CachingNarrativeGenerator(
+              new DefaultThymeleafNarrativeGenerator(),
+              hapiProperties.getNarrative_cache_size(),
+              meterRegistry)));
+        break;
+      default:
+        ctx.setNarrativeGenerator(null);
+    }
+    setDefaultPrettyPrint(hapiProperties.getDefault_pretty_print());
     setDefaultResponseEncoding(EncodingEnum.JSON);
     setPagingProvider(databaseBackedPagingProvider);
     daoConfig.setDeferIndexingForCodesystemsOfSize(
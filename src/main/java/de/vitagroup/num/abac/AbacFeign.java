@@ -1,5 +1,6 @@
 package de.vitagroup.num.abac;
 
+import java.util.List;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -9,10 +10,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 public interface AbacFeign {
 
   final String CONSENT_REST_PATH = "rest/v1/event/listener/callbacks/consent/consent";
+  final String CONSENT_BATCH_REST_PATH = "rest/v1/event/listener/callbacks/consent/consents";
 
   @PostMapping(CONSENT_REST_PATH)
   void addConsent(@RequestBody ConsentEvent consentEvent);
 
+  @PostMapping(CONSENT_BATCH_REST_PATH)
+  void addConsents(@RequestBody List<ConsentEvent> consentEvents);
+
   @DeleteMapping(CONSENT_REST_PATH)
   void removeConsent(@RequestBody ConsentEvent consentEvent);
 }
@@ -0,0 +1,186 @@
+package de.vitagroup.num.abac;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.vitagroup.num.properties.AbacProperties;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.Consent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Transactional outbox for consent events. Events are stored together with the consent write and
+ * claimed in batches by the {@link ConsentOutboxDispatcher}, which sends them outside of any
+ * transaction, so neither a request nor the dispatcher holds a database transaction or row locks
+ * open while waiting for ABAC.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConsentOutbox {
+
+  private static final String NEXT_BATCH_QUERY =
+    "SELECT e FROM ConsentOutboxEntry e"
+      + " WHERE e.failedAt IS NULL AND e.nextAttemptAt <= :now"
+      + " AND e.patientReference NOT IN ("
+      + "SELECT b.patientReference FROM ConsentOutboxEntry b"
+      + " WHERE b.failedAt IS NULL AND b.nextAttemptAt > :now)"
+      + " ORDER BY e.id";
+
+  private static final String DELETE_QUERY = "DELETE FROM ConsentOutboxEntry e WHERE e.id IN :ids";
+
+  private static final String RELEASE_QUERY =
+    "UPDATE ConsentOutboxEntry e SET e.nextAttemptAt = :now WHERE e.id IN :ids";
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final FhirContext fhirContext;
+
+  private final AbacProperties abacProperties;
+
+  /** Stores the event as part of the currently running consent write transaction. */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void enqueue(Consent consent, boolean insert) {
+    Instant now = Instant.now();
+
+    ConsentOutboxEntry entry = new ConsentOutboxEntry();
+    entry.setPatientReference(StringUtils.defaultString(consent.getPatient().getReference()));
+    entry.setInsert(insert);
+    entry.setPayload(fhirContext.newJsonParser().encodeResourceToString(consent));
+    entry.setCreatedAt(now);
+    entry.setNextAttemptAt(now);
+
+    entityManager.persist(entry);
+  }
+
+  /**
+   * Claims the next batch of due events for delivery. Their next attempt is moved past the claim
+   * timeout before the transaction commits, so other dispatchers skip them while they are sent
+   * outside of any transaction, and a dispatcher that dies in between leaves them to be claimed
+   * again once the timeout passed. Entries of a patient that still has an event waiting for a
+   * retry or claimed by a dispatcher are held back, so events of one patient always reach ABAC in
+   * the order they were written.
+   */
+  @Transactional
+  public List<ConsentOutboxEntry> claim(int batchSize) {
+    Instant now = Instant.now();
+
+    List<ConsentOutboxEntry> batch =
+      entityManager
+        .createQuery(NEXT_BATCH_QUERY, ConsentOutboxEntry.class)
+        .setParameter("now", now)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .setMaxResults(batchSize)
+        .getResultList();
+
+    Instant claimedUntil = now.plusMillis(abacProperties.getOutbox().getClaimTimeoutMillis());
+    batch.forEach(entry -> entry.setNextAttemptAt(claimedUntil));
+    return batch;
+  }
+
+  /** Removes events ABAC accepted. */
+  @Transactional
+  public void delivered(List<ConsentOutboxEntry> entries) {
+    if (!entries.isEmpty()) {
+      entityManager.createQuery(DELETE_QUERY).setParameter("ids", ids(entries)).executeUpdate();
+    }
+  }
+
+  /** Makes claimed events that were not delivered, but not rejected either, due again. */
+  @Transactional
+  public void release(List<ConsentOutboxEntry> entries) {
+    if (!entries.isEmpty()) {
+      entityManager
+        .createQuery(RELEASE_QUERY)
+        .setParameter("now", Instant.now())
+        .setParameter("ids", ids(entries))
+        .executeUpdate();
+    }
+  }
+
+  /**
+   * Records that ABAC rejected the event. It is retried with an exponential backoff until it was
+   * rejected {@code abac.outbox.max-attempts} times, then it is kept as failed for inspection and
+   * no longer holds back the later events of its patient. Events that could not be delivered
+   * because ABAC was not reachable are released instead and never given up.
+   */
+  @Transactional
+  public void rejected(ConsentOutboxEntry entry, RuntimeException error) {
+    ConsentOutboxEntry current = entityManager.find(ConsentOutboxEntry.class, entry.getId());
+    if (current == null) {
+      return;
+    }
+
+    AbacProperties.Outbox outbox = abacProperties.getOutbox();
+    Instant now = Instant.now();
+    int attempts = current.getAttempts() + 1;
+    current.setAttempts(attempts);
+    current.setLastError(StringUtils.abbreviate(String.valueOf(error), MAX_ERROR_LENGTH));
+
+    if (attempts >= outbox.getMaxAttempts()) {
+      log.error(
+        "Consent event {} of {} was rejected {} times and is given up",
+        current.getId(),
+        current.getPatientReference(),
+        attempts,
+        error);
+      current.setFailedAt(now);
+      return;
+    }
+
+    long backoff =
+      Math.min(
+        outbox.getMaxBackoffMillis(),
+        outbox.getInitialBackoffMillis() << Math.min(attempts - 1, 30));
+    current.setNextAttemptAt(now.plusMillis(backoff));
+  }
+
+  public ConsentEvent toEvent(ConsentOutboxEntry entry) {
+    Consent consent = fhirContext.newJsonParser().parseResource(Consent.class, entry.getPayload());
+    return ConsentEvent.builder().consent(consent).insert(entry.isInsert()).build();
+  }
+
+  @Transactional(readOnly = true)
+  public long depth() {
+    return entityManager
+      .createQuery("SELECT COUNT(e) FROM ConsentOutboxEntry e WHERE e.failedAt IS NULL", Long.class)
+      .getSingleResult();
+  }
+
+  /** Number of events given up after {@code abac.outbox.max-attempts} failed deliveries. */
+  @Transactional(readOnly = true)
+  public long failedCount() {
+    return entityManager
+      .createQuery(
+        "SELECT COUNT(e) FROM ConsentOutboxEntry e WHERE e.failedAt IS NOT NULL", Long.class)
+      .getSingleResult();
+  }
+
+  /** Age of the oldest undelivered event, zero if the outbox is empty. */
+  @Transactional(readOnly = true)
+  public Duration lag() {
+    Instant oldest =
+      entityManager
+        .createQuery(
+          "SELECT MIN(e.createdAt) FROM ConsentOutboxEntry e WHERE e.failedAt IS NULL",
+          Instant.class)
+        .getSingleResult();
+    return oldest == null ? Duration.ZERO : Duration.between(oldest, Instant.now());
+  }
+
+  private static List<Long> ids(List<ConsentOutboxEntry> entries) {
+    return entries.stream().map(ConsentOutboxEntry::getId).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,187 @@
+package de.vitagroup.num.abac;
+
+import de.vitagroup.num.properties.AbacProperties;
+import feign.FeignException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the {@link ConsentOutbox} in the background and sends its events to ABAC in batches,
+ * outside of any database transaction.
+ *
+ * <p>Only events ABAC rejects count as failed attempts. While ABAC cannot be reached the claimed
+ * events are put back unchanged and the dispatcher pauses with an exponential backoff, so an
+ * outage of any length delays consent changes but never gives them up.
+ */
+@Slf4j
+@Component
+public class ConsentOutboxDispatcher {
+
+  private final ConsentOutbox consentOutbox;
+
+  private final AbacFeign abacFeign;
+
+  private final AbacProperties abacProperties;
+
+  private final Timer sendTimer;
+
+  private final Timer sendErrorTimer;
+
+  private final Counter dispatchedCounter;
+
+  private final Counter failureCounter;
+
+  /** Consecutive rounds that found ABAC unreachable */
+  private final AtomicInteger unreachableRounds = new AtomicInteger();
+
+  private volatile long pausedUntilMillis;
+
+  public ConsentOutboxDispatcher(
+    ConsentOutbox consentOutbox,
+    AbacFeign abacFeign,
+    AbacProperties abacProperties,
+    MeterRegistry meterRegistry) {
+    this.consentOutbox = consentOutbox;
+    this.abacFeign = abacFeign;
+    this.abacProperties = abacProperties;
+
+    sendTimer = meterRegistry.timer("abac.outbox.send", "outcome", "success");
+    sendErrorTimer = meterRegistry.timer("abac.outbox.send", "outcome", "error");
+    dispatchedCounter = meterRegistry.counter("abac.outbox.dispatched");
+    failureCounter = meterRegistry.counter("abac.outbox.failures");
+
+    Gauge.builder("abac.outbox.depth", consentOutbox, ConsentOutbox::depth)
+      .description("Consent events waiting to be delivered to ABAC")
+      .register(meterRegistry);
+    Gauge.builder("abac.outbox.failed", consentOutbox, ConsentOutbox::failedCount)
+      .description("Consent events given up after ABAC rejected them too often")
+      .register(meterRegistry);
+    Gauge.builder("abac.outbox.lag", consentOutbox, outbox -> outbox.lag().toMillis() / 1000d)
+      .description("Age of the oldest consent event waiting to be delivered to ABAC")
+      .baseUnit("seconds")
+      .register(meterRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${abac.outbox.poll-interval-millis:1000}")
+  public void dispatch() {
+    if (System.currentTimeMillis() < pausedUntilMillis) {
+      return;
+    }
+
+    int batchSize = abacProperties.getOutbox().getBatchSize();
+    List<ConsentOutboxEntry> batch;
+
+    do {
+      batch = consentOutbox.claim(batchSize);
+      if (!batch.isEmpty() && !deliver(batch)) {
+        // no further batch waits out the client timeouts in this round
+        pause();
+        return;
+      }
+    } while (batch.size() == batchSize);
+    unreachableRounds.set(0);
+  }
+
+  /**
+   * Sends the claimed batch in one call. If ABAC refuses it the events are sent one by one, so a
+   * single event ABAC rejects is retried on its own and does not hold back the others.
+   *
+   * @return false if ABAC could not be reached, the events not delivered are put back
+   */
+  private boolean deliver(List<ConsentOutboxEntry> batch) {
+    try {
+      send(batch.stream().map(consentOutbox::toEvent).collect(Collectors.toList()));
+      consentOutbox.delivered(batch);
+      dispatchedCounter.increment(batch.size());
+      return true;
+    } catch (RuntimeException e) {
+      if (!isRejected(e)) {
+        log.warn("Delivering {} consent events to ABAC failed, retrying later", batch.size(), e);
+        consentOutbox.release(batch);
+        return false;
+      }
+      log.warn("ABAC rejected a batch of {} consent events, sending them one by one", batch.size());
+    }
+
+    List<ConsentOutboxEntry> delivered = new ArrayList<>();
+    List<ConsentOutboxEntry> heldBack = new ArrayList<>();
+    Set<String> failedPatients = new HashSet<>();
+    boolean reachable = true;
+    for (int i = 0; i < batch.size(); i++) {
+      ConsentOutboxEntry entry = batch.get(i);
+      if (failedPatients.contains(entry.getPatientReference())) {
+        // a newer event of the patient waits until the older one got through
+        heldBack.add(entry);
+        continue;
+      }
+
+      try {
+        send(Collections.singletonList(consentOutbox.toEvent(entry)));
+        delivered.add(entry);
+      } catch (RuntimeException e) {
+        if (!isRejected(e)) {
+          log.warn("Delivering consent events to ABAC failed, retrying later", e);
+          heldBack.addAll(batch.subList(i, batch.size()));
+          reachable = false;
+          break;
+        }
+        log.warn("ABAC rejected consent event {}, retrying later", entry.getId(), e);
+        consentOutbox.rejected(entry, e);
+        failedPatients.add(entry.getPatientReference());
+      }
+    }
+
+    consentOutbox.delivered(delivered);
+    consentOutbox.release(heldBack);
+    dispatchedCounter.increment(delivered.size());
+    return reachable;
+  }
+
+  /** Skips the next rounds with the same exponential backoff as a rejected event */
+  private void pause() {
+    AbacProperties.Outbox outbox = abacProperties.getOutbox();
+    int rounds = unreachableRounds.incrementAndGet();
+    long backoff =
+      Math.min(
+        outbox.getMaxBackoffMillis(), outbox.getInitialBackoffMillis() << Math.min(rounds - 1, 30));
+    pausedUntilMillis = System.currentTimeMillis() + backoff;
+  }
+
+  /** Whether ABAC refused the request itself, as opposed to not being reachable */
+  private static boolean isRejected(RuntimeException e) {
+    if (!(e instanceof FeignException)) {
+      return false;
+    }
+    int status = ((FeignException) e).status();
+    return status >= 400
+      && status < 500
+      && status != HttpStatus.REQUEST_TIMEOUT.value()
+      && status != HttpStatus.TOO_MANY_REQUESTS.value();
+  }
+
+  private void send(List<ConsentEvent> consentEvents) {
+    long start = System.nanoTime();
+    try {
+      abacFeign.addConsents(consentEvents);
+      sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      sendErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      failureCounter.increment();
+      throw e;
+    }
+  }
+}
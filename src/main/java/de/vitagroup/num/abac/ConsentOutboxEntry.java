@@ -0,0 +1,63 @@
+package de.vitagroup.num.abac;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Consent event waiting to be delivered to ABAC. Rows are written in the same transaction as the
+ * consent itself and removed by the {@link ConsentOutboxDispatcher} once ABAC accepted them. Rows
+ * with a {@code FAILED_AT} were given up after too many failed deliveries and are kept for
+ * inspection.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(
+  name = "NUM_CONSENT_OUTBOX",
+  indexes = {
+    @Index(name = "IDX_CONSENT_OUTBOX_NEXT", columnList = "NEXT_ATTEMPT_AT"),
+    @Index(name = "IDX_CONSENT_OUTBOX_PATIENT", columnList = "PATIENT_REFERENCE")
+  })
+public class ConsentOutboxEntry {
+
+  @Id
+  @SequenceGenerator(name = "SEQ_CONSENT_OUTBOX", sequenceName = "SEQ_CONSENT_OUTBOX")
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_CONSENT_OUTBOX")
+  @Column(name = "ID")
+  private Long id;
+
+  @Column(name = "PATIENT_REFERENCE", nullable = false, length = 200)
+  private String patientReference;
+
+  @Column(name = "IS_INSERT", nullable = false)
+  private boolean insert;
+
+  @Column(name = "PAYLOAD", nullable = false, length = 1000000)
+  private String payload;
+
+  @Column(name = "CREATED_AT", nullable = false)
+  private Instant createdAt;
+
+  @Column(name = "NEXT_ATTEMPT_AT", nullable = false)
+  private Instant nextAttemptAt;
+
+  @Column(name = "ATTEMPTS", nullable = false)
+  private int attempts;
+
+  @Column(name = "LAST_ERROR", length = 1000)
+  private String lastError;
+
+  @Column(name = "FAILED_AT")
+  private Instant failedAt;
+}
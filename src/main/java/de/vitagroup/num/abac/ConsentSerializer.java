@@ -1,17 +1,32 @@
 package de.vitagroup.num.abac;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IJsonLikeParser;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import java.io.IOException;
 import org.hl7.fhir.r4.model.Consent;
 
+/**
+ * Streams the consent straight into the surrounding Jackson document. Instantiated through
+ * Spring's handler instantiator, so the application wide {@link FhirContext} is reused instead of
+ * scanning the R4 model for every event.
+ */
 public class ConsentSerializer extends JsonSerializer<Consent> {
 
+  private final FhirContext fhirContext;
+
+  public ConsentSerializer(FhirContext fhirContext) {
+    this.fhirContext = fhirContext;
+    // scan the Consent model once up front instead of on the first event
+    fhirContext.getResourceDefinition(Consent.class);
+  }
+
   @Override
   public void serialize(Consent value, JsonGenerator gen, SerializerProvider serializers)
     throws IOException {
-    gen.writeRawValue(FhirContext.forR4().newJsonParser().encodeResourceToString(value));
+    IJsonLikeParser parser = (IJsonLikeParser) fhirContext.newJsonParser();
+    parser.encodeResourceToJsonLikeWriter(value, new JsonGeneratorWriter(gen));
   }
 }
@@ -0,0 +1,167 @@
+package de.vitagroup.num.abac;
+
+import ca.uhn.fhir.parser.json.JsonLikeWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Lets the HAPI JSON parser write into a Jackson generator that is already in use, so a resource
+ * can be embedded into a surrounding document without encoding it to a String first. Formatting
+ * and closing stay with the owner of the generator.
+ */
+class JsonGeneratorWriter extends JsonLikeWriter {
+
+  private final JsonGenerator generator;
+
+  JsonGeneratorWriter(JsonGenerator generator) {
+    this.generator = generator;
+  }
+
+  @Override
+  public JsonLikeWriter init() {
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter flush() {
+    return this;
+  }
+
+  @Override
+  public void close() {
+    // the generator is owned by the caller
+  }
+
+  @Override
+  public JsonLikeWriter beginObject() throws IOException {
+    generator.writeStartObject();
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter beginObject(String name) throws IOException {
+    generator.writeObjectFieldStart(name);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter beginArray(String name) throws IOException {
+    generator.writeArrayFieldStart(name);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String value) throws IOException {
+    generator.writeString(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(BigInteger value) throws IOException {
+    generator.writeNumber(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(BigDecimal value) throws IOException {
+    generator.writeNumber(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(long value) throws IOException {
+    generator.writeNumber(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(double value) throws IOException {
+    generator.writeNumber(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(Boolean value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else {
+      generator.writeBoolean(value);
+    }
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(boolean value) throws IOException {
+    generator.writeBoolean(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter writeNull() throws IOException {
+    generator.writeNull();
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, String value) throws IOException {
+    generator.writeStringField(name, value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, BigInteger value) throws IOException {
+    generator.writeFieldName(name);
+    generator.writeNumber(value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, BigDecimal value) throws IOException {
+    generator.writeNumberField(name, value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, long value) throws IOException {
+    generator.writeNumberField(name, value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, double value) throws IOException {
+    generator.writeNumberField(name, value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, Boolean value) throws IOException {
+    generator.writeFieldName(name);
+    return write(value);
+  }
+
+  @Override
+  public JsonLikeWriter write(String name, boolean value) throws IOException {
+    generator.writeBooleanField(name, value);
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter endObject() throws IOException {
+    generator.writeEndObject();
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter endArray() throws IOException {
+    generator.writeEndArray();
+    return this;
+  }
+
+  @Override
+  public JsonLikeWriter endBlock() throws IOException {
+    generator.writeEndObject();
+    return this;
+  }
+}
@@ -0,0 +1,141 @@
+package de.vitagroup.num.audit;
+
+import de.vitagroup.num.properties.AuditProperties;
+import de.vitagroup.num.properties.AuditProperties.OverflowPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands audit messages over to dedicated sender threads, so validation, marshalling and the
+ * transport to the audit repository never run on a request thread. The queue is bounded, what
+ * happens when it is full is decided by the configured {@link OverflowPolicy}.
+ */
+@Slf4j
+@Component
+public class AsyncAuditSender {
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private final AuditContext auditContext;
+
+  private final AuditProperties auditProperties;
+
+  private final BlockingQueue<AuditMessage> queue;
+
+  private final ExecutorService senders;
+
+  private final Timer sendTimer;
+
+  private final Counter dropCounter;
+
+  private final Counter failureCounter;
+
+  private volatile boolean running = true;
+
+  public AsyncAuditSender(
+    AuditContext auditContext, AuditProperties auditProperties, MeterRegistry meterRegistry) {
+    this.auditContext = auditContext;
+    this.auditProperties = auditProperties;
+
+    queue = new ArrayBlockingQueue<>(auditProperties.getQueueCapacity());
+    sendTimer = meterRegistry.timer("audit.send");
+    dropCounter = meterRegistry.counter("audit.dropped");
+    failureCounter = meterRegistry.counter("audit.failures");
+    Gauge.builder("audit.queue.depth", queue, BlockingQueue::size)
+      .description("Audit messages waiting to be sent")
+      .register(meterRegistry);
+
+    senders =
+      Executors.newFixedThreadPool(
+        auditProperties.getSenderThreads(), new CustomizableThreadFactory("audit-sender-"));
+    for (int i = 0; i < auditProperties.getSenderThreads(); i++) {
+      senders.execute(this::drain);
+    }
+  }
+
+  public void send(AuditMessage auditMessage) {
+    if (!running) {
+      // senders are gone, nothing would pick the message up anymore
+      sendNow(auditMessage);
+      return;
+    }
+
+    if (auditProperties.getOverflowPolicy() == OverflowPolicy.BLOCK) {
+      try {
+        queue.put(auditMessage);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        overflow(auditMessage);
+      }
+    } else if (!queue.offer(auditMessage)) {
+      overflow(auditMessage);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    senders.shutdown();
+
+    if (!senders.awaitTermination(auditProperties.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+      senders.shutdownNow();
+      log.warn("Audit senders did not finish in time, {} audit messages were not sent", queue.size());
+    }
+  }
+
+  private void drain() {
+    while (running || !queue.isEmpty()) {
+      try {
+        AuditMessage auditMessage = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (auditMessage != null) {
+          sendNow(auditMessage);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void sendNow(AuditMessage auditMessage) {
+    try {
+      sendTimer.record(
+        () -> {
+          auditMessage.validate();
+          auditContext.audit(auditMessage);
+        });
+    } catch (RuntimeException e) {
+      failureCounter.increment();
+      log.error("Sending audit message failed", e);
+    }
+  }
+
+  private void overflow(AuditMessage auditMessage) {
+    dropCounter.increment();
+
+    if (auditProperties.getOverflowPolicy() == OverflowPolicy.LOG) {
+      StringWriter writer = new StringWriter();
+      try {
+        auditContext.getSerializationStrategy().marshal(auditMessage, writer, false);
+        log.warn("Audit queue full, audit message was not sent: {}", writer);
+      } catch (IOException | RuntimeException e) {
+        log.warn("Audit queue full, audit message was dropped", e);
+      }
+    }
+  }
+}
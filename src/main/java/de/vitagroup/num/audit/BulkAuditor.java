@@ -0,0 +1,62 @@
+package de.vitagroup.num.audit;
+
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.codes.EventActionCode;
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.event.PatientRecordBuilder;
+import org.openehealth.ipf.commons.audit.model.ActiveParticipantType;
+import org.openehealth.ipf.commons.audit.types.EventType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Audit messages of the bulk operations. These write or disclose patients outside of a request
+ * per patient, so they are audited with one message per group of patients instead.
+ */
+@Component
+@RequiredArgsConstructor
+public class BulkAuditor {
+
+  private static final String IMPORT_TEXT = "import";
+
+  private static final String EXPORT_TEXT = "export";
+
+  private static final String HL7_CODING_SYSTEM =
+    "http://terminology.hl7.org/CodeSystem/audit-event-type";
+
+  private final AuditContext auditContext;
+
+  private final AsyncAuditSender auditSender;
+
+  public void patientsImported(String userId, List<String> patientIds) {
+    send(userId, patientIds, "Patients imported", EventActionCode.Create, IMPORT_TEXT);
+  }
+
+  public void patientsExported(String userId, List<String> patientIds) {
+    send(userId, patientIds, "Patients exported", EventActionCode.Read, EXPORT_TEXT);
+  }
+
+  private void send(
+    String userId,
+    List<String> patientIds,
+    String description,
+    EventActionCode eventActionCode,
+    String eventText) {
+    PatientRecordBuilder builder =
+      new PatientRecordBuilder(
+        EventOutcomeIndicator.Success,
+        description,
+        eventActionCode,
+        EventType.of(eventText, HL7_CODING_SYSTEM, eventText));
+    for (String patientId : patientIds) {
+      builder.addPatient(patientId, StringUtils.EMPTY, null);
+    }
+    auditSender.send(
+      builder
+        .addActiveParticipant(new ActiveParticipantType(userId, true))
+        .setAuditSource(auditContext)
+        .getMessage());
+  }
+}
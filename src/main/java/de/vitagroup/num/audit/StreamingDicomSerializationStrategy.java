@@ -0,0 +1,276 @@
+package de.vitagroup.num.audit;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.Base64;
+import java.util.List;
+import org.openehealth.ipf.commons.audit.marshal.SerializationStrategy;
+import org.openehealth.ipf.commons.audit.model.ActiveParticipantType;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.model.AuditSourceIdentificationType;
+import org.openehealth.ipf.commons.audit.model.EventIdentificationType;
+import org.openehealth.ipf.commons.audit.model.ParticipantObjectIdentificationType;
+import org.openehealth.ipf.commons.audit.model.TypeValuePairType;
+import org.openehealth.ipf.commons.audit.types.CodedValueType;
+
+/**
+ * Writes DICOM (2017c) audit messages into one buffer handed to the target writer, instead of
+ * building a JDOM element tree per message. The output is the one of IPF's {@code DICOM2017c}
+ * with the compact JDOM format: the same element and attribute order, an XML declaration followed
+ * by CRLF, empty elements as {@code <name />}, JDOM's escaping and whitespace normalized text.
+ * StAX is not used, it can produce neither that form of empty elements nor that escaping. DICOM
+ * object descriptions, which this service never records, are not written. Pretty printing is
+ * only used for debugging and is delegated to the JDOM based strategy.
+ */
+public class StreamingDicomSerializationStrategy implements SerializationStrategy {
+
+  /** IHE requires the event date time with a fixed number of fractional digits */
+  public static final DateTimeFormatter EVENT_DATE_TIME_FORMATTER =
+    new DateTimeFormatterBuilder().appendInstant(5).toFormatter();
+
+  private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+  private static final String LINE_SEPARATOR = "\r\n";
+
+  private final SerializationStrategy prettyStrategy;
+
+  public StreamingDicomSerializationStrategy(SerializationStrategy prettyStrategy) {
+    this.prettyStrategy = prettyStrategy;
+  }
+
+  @Override
+  public void marshal(AuditMessage auditMessage, Writer writer, boolean pretty)
+    throws IOException {
+    if (pretty) {
+      prettyStrategy.marshal(auditMessage, writer, true);
+      return;
+    }
+    if (auditMessage == null) {
+      return;
+    }
+
+    StringBuilder xml = new StringBuilder(512);
+    xml.append(DECLARATION).append(LINE_SEPARATOR).append("<AuditMessage>");
+    eventIdentification(xml, auditMessage.getEventIdentification());
+    for (ActiveParticipantType activeParticipant : auditMessage.getActiveParticipants()) {
+      activeParticipant(xml, activeParticipant);
+    }
+    auditSourceIdentification(xml, auditMessage.getAuditSourceIdentification());
+    for (ParticipantObjectIdentificationType participantObject :
+      auditMessage.getParticipantObjectIdentifications()) {
+      participantObjectIdentification(xml, participantObject);
+    }
+    xml.append("</AuditMessage>").append(LINE_SEPARATOR);
+
+    writer.append(xml);
+    writer.flush();
+  }
+
+  private static void eventIdentification(StringBuilder xml, EventIdentificationType event) {
+    xml.append("<EventIdentification");
+    attribute(xml, "EventActionCode", event.getEventActionCode().getValue());
+    attribute(xml, "EventDateTime", EVENT_DATE_TIME_FORMATTER.format(event.getEventDateTime()));
+    attribute(
+      xml, "EventOutcomeIndicator", String.valueOf(event.getEventOutcomeIndicator().getValue()));
+    xml.append('>');
+    codedValue(xml, "EventID", event.getEventID());
+    codedValues(xml, "EventTypeCode", event.getEventTypeCode());
+    if (event.getEventOutcomeDescription() != null) {
+      textElement(xml, "EventOutcomeDescription", event.getEventOutcomeDescription());
+    }
+    codedValues(xml, "PurposeOfUse", event.getPurposesOfUse());
+    xml.append("</EventIdentification>");
+  }
+
+  private static void activeParticipant(StringBuilder xml, ActiveParticipantType participant) {
+    xml.append("<ActiveParticipant");
+    attribute(xml, "UserID", participant.getUserID());
+    optionalAttribute(xml, "AlternativeUserID", participant.getAlternativeUserID());
+    optionalAttribute(xml, "UserName", participant.getUserName());
+    attribute(xml, "UserIsRequestor", Boolean.toString(participant.isUserIsRequestor()));
+    optionalAttribute(xml, "NetworkAccessPointID", participant.getNetworkAccessPointID());
+    if (participant.getNetworkAccessPointTypeCode() != null) {
+      attribute(
+        xml,
+        "NetworkAccessPointTypeCode",
+        String.valueOf(participant.getNetworkAccessPointTypeCode().getValue()));
+    }
+    endStartTag(xml, participant.getRoleIDCodes().isEmpty());
+    codedValues(xml, "RoleIDCode", participant.getRoleIDCodes());
+    endElement(xml, "ActiveParticipant", participant.getRoleIDCodes().isEmpty());
+  }
+
+  private static void auditSourceIdentification(
+    StringBuilder xml, AuditSourceIdentificationType auditSource) {
+    xml.append("<AuditSourceIdentification");
+    optionalAttribute(xml, "AuditEnterpriseSiteID", auditSource.getAuditEnterpriseSiteID());
+    optionalAttribute(xml, "AuditSourceID", auditSource.getAuditSourceID());
+    boolean empty = auditSource.getAuditSourceType().isEmpty();
+    endStartTag(xml, empty);
+    codedValues(xml, "AuditSourceTypeCode", auditSource.getAuditSourceType());
+    endElement(xml, "AuditSourceIdentification", empty);
+  }
+
+  private static void participantObjectIdentification(
+    StringBuilder xml, ParticipantObjectIdentificationType participantObject) {
+    xml.append("<ParticipantObjectIdentification");
+    attribute(xml, "ParticipantObjectID", participantObject.getParticipantObjectID());
+    if (participantObject.getParticipantObjectTypeCode() != null) {
+      attribute(
+        xml,
+        "ParticipantObjectTypeCode",
+        String.valueOf(participantObject.getParticipantObjectTypeCode().getValue()));
+    }
+    if (participantObject.getParticipantObjectTypeCodeRole() != null) {
+      attribute(
+        xml,
+        "ParticipantObjectTypeCodeRole",
+        String.valueOf(participantObject.getParticipantObjectTypeCodeRole().getValue()));
+    }
+    if (participantObject.getParticipantObjectDataLifeCycle() != null) {
+      attribute(
+        xml,
+        "ParticipantObjectDataLifeCycle",
+        String.valueOf(participantObject.getParticipantObjectDataLifeCycle().getValue()));
+    }
+    optionalAttribute(
+      xml, "ParticipantObjectSensitivity", participantObject.getParticipantObjectSensitivity());
+    xml.append('>');
+
+    codedValue(
+      xml, "ParticipantObjectIDTypeCode", participantObject.getParticipantObjectIDTypeCode());
+    if (participantObject.getParticipantObjectName() != null) {
+      textElement(xml, "ParticipantObjectName", participantObject.getParticipantObjectName());
+    }
+    if (participantObject.getParticipantObjectQuery() != null) {
+      textElement(
+        xml,
+        "ParticipantObjectQuery",
+        Base64.getEncoder().encodeToString(participantObject.getParticipantObjectQuery()));
+    }
+    for (TypeValuePairType detail : participantObject.getParticipantObjectDetails()) {
+      xml.append("<ParticipantObjectDetail");
+      attribute(xml, "type", detail.getType());
+      attribute(xml, "value", Base64.getEncoder().encodeToString(detail.getValue()));
+      xml.append(" />");
+    }
+    xml.append("</ParticipantObjectIdentification>");
+  }
+
+  private static void codedValues(
+    StringBuilder xml, String tagName, List<? extends CodedValueType> codedValues) {
+    for (CodedValueType codedValue : codedValues) {
+      codedValue(xml, tagName, codedValue);
+    }
+  }
+
+  private static void codedValue(StringBuilder xml, String tagName, CodedValueType codedValue) {
+    if (codedValue == null) {
+      return;
+    }
+    xml.append('<').append(tagName);
+    attribute(xml, "csd-code", codedValue.getCode());
+    optionalAttribute(xml, "codeSystemName", codedValue.getCodeSystemName());
+    optionalAttribute(xml, "displayName", codedValue.getDisplayName());
+    optionalAttribute(xml, "originalText", codedValue.getOriginalText());
+    xml.append(" />");
+  }
+
+  /** Text content the way the compact format writes it: normalized, empty as {@code <name />} */
+  private static void textElement(StringBuilder xml, String tagName, String text) {
+    String normalized = normalize(text);
+    xml.append('<').append(tagName);
+    if (normalized.isEmpty()) {
+      xml.append(" />");
+      return;
+    }
+    xml.append('>');
+    for (int i = 0; i < normalized.length(); i++) {
+      char c = normalized.charAt(i);
+      switch (c) {
+        case '<':
+          xml.append("&lt;");
+          break;
+        case '>':
+          xml.append("&gt;");
+          break;
+        case '&':
+          xml.append("&amp;");
+          break;
+        default:
+          xml.append(c);
+      }
+    }
+    xml.append("</").append(tagName).append('>');
+  }
+
+  private static void endStartTag(StringBuilder xml, boolean empty) {
+    xml.append(empty ? " />" : ">");
+  }
+
+  private static void endElement(StringBuilder xml, String tagName, boolean empty) {
+    if (!empty) {
+      xml.append("</").append(tagName).append('>');
+    }
+  }
+
+  private static void optionalAttribute(StringBuilder xml, String name, String value) {
+    if (value != null) {
+      attribute(xml, name, value);
+    }
+  }
+
+  private static void attribute(StringBuilder xml, String name, String value) {
+    xml.append(' ').append(name).append("=\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '<':
+          xml.append("&lt;");
+          break;
+        case '>':
+          xml.append("&gt;");
+          break;
+        case '"':
+          xml.append("&quot;");
+          break;
+        case '&':
+          xml.append("&amp;");
+          break;
+        case '\r':
+          xml.append("&#xD;");
+          break;
+        case '\t':
+          xml.append("&#x9;");
+          break;
+        case '\n':
+          xml.append("&#xA;");
+          break;
+        default:
+          xml.append(c);
+      }
+    }
+    xml.append('"');
+  }
+
+  /** Trims the text and collapses every run of XML whitespace into one space */
+  private static String normalize(String text) {
+    StringBuilder normalized = new StringBuilder(text.length());
+    boolean space = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+        space = normalized.length() > 0;
+      } else {
+        if (space) {
+          normalized.append(' ');
+          space = false;
+        }
+        normalized.append(c);
+      }
+    }
+    return normalized.toString();
+  }
+}
@@ -0,0 +1,209 @@
+package de.vitagroup.num.bulk;
+
+import de.vitagroup.num.audit.BulkAuditor;
+import de.vitagroup.num.properties.AuditProperties;
+import de.vitagroup.num.properties.BulkExportProperties;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs export jobs one after another on a background thread. Every resource type of a job is
+ * written to its own gzip compressed NDJSON file below {@code bulk.export.directory}; jobs and
+ * files are removed once they are older than {@code bulk.export.retention-hours}. The files are
+ * written to the local directory of the node running the job, with several nodes the directory
+ * has to be shared storage for every node to serve the downloads.
+ */
+@Slf4j
+@Component
+public class BulkExporter {
+
+  private static final String FILE_SUFFIX = ".ndjson.gz";
+
+  private final ResourceExporter resourceExporter;
+
+  private final BulkAuditor bulkAuditor;
+
+  private final BulkExportProperties bulkExportProperties;
+
+  private final AuditProperties auditProperties;
+
+  private final ExecutorService executor;
+
+  /** Heartbeats run on their own thread, other scheduled tasks cannot delay them */
+  private final ScheduledExecutorService heartbeatScheduler;
+
+  /** Jobs queued or running on this node */
+  private final Set<String> activeJobIds = ConcurrentHashMap.newKeySet();
+
+  public BulkExporter(
+    ResourceExporter resourceExporter,
+    BulkAuditor bulkAuditor,
+    BulkExportProperties bulkExportProperties,
+    AuditProperties auditProperties) {
+    this.resourceExporter = resourceExporter;
+    this.bulkAuditor = bulkAuditor;
+    this.bulkExportProperties = bulkExportProperties;
+    this.auditProperties = auditProperties;
+
+    executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("bulk-export-"));
+    heartbeatScheduler =
+      Executors.newSingleThreadScheduledExecutor(
+        new CustomizableThreadFactory("bulk-export-heartbeat-"));
+  }
+
+  public ExportJob submit(Collection<String> resourceTypes, Instant since, String userId) {
+    ExportJob job = resourceExporter.create(resourceTypes, since, userId);
+    activeJobIds.add(job.getId());
+    executor.execute(() -> run(job.getId()));
+    return job;
+  }
+
+  public static List<String> resourceTypes(ExportJob job) {
+    return Arrays.asList(StringUtils.split(job.getResourceTypes(), ','));
+  }
+
+  public Path file(String jobId, String resourceType) {
+    return directory(jobId).resolve(resourceType + FILE_SUFFIX);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void startHeartbeat() {
+    heartbeatScheduler.scheduleWithFixedDelay(
+      this::heartbeat,
+      0,
+      bulkExportProperties.getHeartbeatIntervalMillis(),
+      TimeUnit.MILLISECONDS);
+  }
+
+  @Scheduled(fixedDelayString = "${bulk.export.purge-interval-millis:3600000}")
+  public void purge() {
+    Instant expiry = Instant.now().minus(bulkExportProperties.getRetentionHours(), ChronoUnit.HOURS);
+    for (String jobId : resourceExporter.findCreatedBefore(expiry)) {
+      try {
+        deleteDirectory(directory(jobId));
+        resourceExporter.delete(jobId);
+      } catch (IOException e) {
+        log.warn("Removing the files of export job {} failed", jobId, e);
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    heartbeatScheduler.shutdownNow();
+    executor.shutdownNow();
+  }
+
+  /**
+   * Records that the jobs of this node are alive and fails the queued or running jobs whose node
+   * stopped sending heartbeats, such as the jobs of this node before a restart. Jobs of the other
+   * nodes that are up keep running.
+   */
+  private void heartbeat() {
+    try {
+      resourceExporter.heartbeat(activeJobIds);
+      int stale =
+        resourceExporter.failStale(
+          Instant.now().minusMillis(bulkExportProperties.getStaleAfterMillis()));
+      if (stale > 0) {
+        log.warn("{} export jobs failed, their node stopped", stale);
+      }
+    } catch (RuntimeException e) {
+      // an exception would cancel the schedule
+      log.warn("Recording the export job heartbeat failed", e);
+    }
+  }
+
+  private void run(String jobId) {
+    try {
+      export(jobId);
+    } finally {
+      activeJobIds.remove(jobId);
+    }
+  }
+
+  private void export(String jobId) {
+    ExportJob job = resourceExporter.start(jobId);
+    if (job == null) {
+      log.warn("Export job {} is no longer queued and is skipped", jobId);
+      return;
+    }
+    int patientGroupSize = Math.max(1, auditProperties.getMaxParticipantsPerMessage());
+    long start = System.currentTimeMillis();
+    long resourceCount = 0;
+
+    try {
+      Files.createDirectories(directory(jobId));
+      for (String resourceType : resourceTypes(job)) {
+        try (Writer writer =
+          new OutputStreamWriter(
+            new GZIPOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(file(jobId, resourceType)))),
+            StandardCharsets.UTF_8)) {
+          resourceCount +=
+            resourceExporter.export(
+              job,
+              resourceType,
+              writer,
+              patientGroupSize,
+              patientIds -> bulkAuditor.patientsExported(job.getUserId(), patientIds));
+        }
+      }
+      if (!resourceExporter.complete(jobId, resourceCount)) {
+        log.warn("Export job {} was failed while it ran, its files are not offered", jobId);
+        return;
+      }
+      log.info(
+        "Export job {}: {} resources exported in {} ms",
+        jobId,
+        resourceCount,
+        System.currentTimeMillis() - start);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Export job {} failed", jobId, e);
+      resourceExporter.fail(jobId, e.getMessage());
+    }
+  }
+
+  private Path directory(String jobId) {
+    return Paths.get(bulkExportProperties.getDirectory()).resolve(jobId);
+  }
+
+  private static void deleteDirectory(Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
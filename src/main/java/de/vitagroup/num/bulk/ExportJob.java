@@ -0,0 +1,68 @@
+package de.vitagroup.num.bulk;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Background export of resources changed between {@code since} and {@code transactionTime}. The
+ * transaction time of a completed export is the {@code _since} of the next incremental one.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "NUM_EXPORT_JOB")
+public class ExportJob {
+
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    FAILED,
+    COMPLETED
+  }
+
+  @Id
+  @Column(name = "ID", length = 36)
+  private String id;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "STATUS", nullable = false, length = 20)
+  private Status status;
+
+  /** Comma separated resource types, exported in this order */
+  @Column(name = "RESOURCE_TYPES", nullable = false, length = 200)
+  private String resourceTypes;
+
+  @Column(name = "SINCE")
+  private Instant since;
+
+  @Column(name = "TRANSACTION_TIME", nullable = false)
+  private Instant transactionTime;
+
+  @Column(name = "USER_ID", length = 200)
+  private String userId;
+
+  @Column(name = "RESOURCE_COUNT", nullable = false)
+  private long resourceCount;
+
+  @Column(name = "CREATED_AT", nullable = false)
+  private Instant createdAt;
+
+  @Column(name = "UPDATED_AT", nullable = false)
+  private Instant updatedAt;
+
+  /** Last time the node holding the queued or running job reported it alive */
+  @Column(name = "HEARTBEAT_AT")
+  private Instant heartbeatAt;
+
+  @Column(name = "ERROR", length = 1000)
+  private String error;
+}
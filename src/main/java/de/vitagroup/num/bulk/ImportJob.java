@@ -0,0 +1,62 @@
+package de.vitagroup.num.bulk;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Checkpoint of an NDJSON Patient import. The counters are updated in the transaction that writes
+ * a chunk, so after a failure they describe exactly what has been committed and the import can be
+ * resumed after the last committed line.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "NUM_IMPORT_JOB")
+public class ImportJob {
+
+  public enum Status {
+    RUNNING,
+    FAILED,
+    COMPLETED
+  }
+
+  @Id
+  @Column(name = "ID", length = 36)
+  private String id;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "STATUS", nullable = false, length = 20)
+  private Status status;
+
+  /** Lines of the NDJSON stream committed so far, including blank lines */
+  @Column(name = "LINES_COMMITTED", nullable = false)
+  private long linesCommitted;
+
+  /** Hex SHA-256 of the committed lines, each followed by a line feed */
+  @Column(name = "COMMITTED_DIGEST", length = 64)
+  private String committedDigest;
+
+  @Column(name = "CHUNKS_COMMITTED", nullable = false)
+  private long chunksCommitted;
+
+  @Column(name = "RESOURCES_IMPORTED", nullable = false)
+  private long resourcesImported;
+
+  @Column(name = "CREATED_AT", nullable = false)
+  private Instant createdAt;
+
+  @Column(name = "UPDATED_AT", nullable = false)
+  private Instant updatedAt;
+
+  @Column(name = "ERROR", length = 1000)
+  private String error;
+}
@@ -0,0 +1,279 @@
+package de.vitagroup.num.bulk;
+
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import com.google.common.util.concurrent.RateLimiter;
+import de.vitagroup.num.properties.BulkReindexProperties;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs reindex jobs on a fork-join pool of {@code bulk.reindex.parallelism} threads. The pending
+ * ranges of a job are split recursively until every task holds one range. A rate limiter shared
+ * by all jobs keeps the reindex below {@code bulk.reindex.max-resources-per-second}, so live
+ * requests keep their share of the database.
+ */
+@Slf4j
+@Component
+public class MassReindexer {
+
+  private final ResourceReindexer resourceReindexer;
+
+  private final BulkReindexProperties bulkReindexProperties;
+
+  private final ForkJoinPool pool;
+
+  private final RateLimiter rateLimiter;
+
+  /** Heartbeats run on their own thread, other scheduled tasks cannot delay them */
+  private final ScheduledExecutorService heartbeatScheduler;
+
+  private final Map<String, Progress> running = new ConcurrentHashMap<>();
+
+  public MassReindexer(
+    ResourceReindexer resourceReindexer, BulkReindexProperties bulkReindexProperties) {
+    this.resourceReindexer = resourceReindexer;
+    this.bulkReindexProperties = bulkReindexProperties;
+
+    pool =
+      new ForkJoinPool(
+        Math.max(1, bulkReindexProperties.getParallelism()),
+        forkJoinPool -> {
+          ForkJoinWorkerThread thread =
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+          thread.setName("mass-reindex-" + thread.getPoolIndex());
+          return thread;
+        },
+        null,
+        false);
+    rateLimiter =
+      bulkReindexProperties.getMaxResourcesPerSecond() > 0
+        ? RateLimiter.create(bulkReindexProperties.getMaxResourcesPerSecond())
+        : null;
+    heartbeatScheduler =
+      Executors.newSingleThreadScheduledExecutor(
+        new CustomizableThreadFactory("mass-reindex-heartbeat-"));
+  }
+
+  public ReindexJob submit(Collection<String> resourceTypes) {
+    ReindexJob job =
+      resourceReindexer.create(
+        resourceTypes, Math.max(1, bulkReindexProperties.getRangeSize()));
+    launch(job);
+    return job;
+  }
+
+  /** Continues a failed job with the ranges that were not completed */
+  public ReindexJob resume(String jobId) {
+    if (running.containsKey(jobId)) {
+      throw new PreconditionFailedException("Reindex job " + jobId + " is still running");
+    }
+    ReindexJob job = resourceReindexer.start(jobId);
+    if (job.getStatus() != ReindexJob.Status.COMPLETED) {
+      launch(job);
+    }
+    return job;
+  }
+
+  /** Progress of the current run of the job, empty if the job is not running */
+  public Optional<Progress> progress(String jobId) {
+    return Optional.ofNullable(running.get(jobId));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void startHeartbeat() {
+    heartbeatScheduler.scheduleWithFixedDelay(
+      this::heartbeat,
+      0,
+      bulkReindexProperties.getHeartbeatIntervalMillis(),
+      TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    heartbeatScheduler.shutdownNow();
+    pool.shutdownNow();
+  }
+
+  /**
+   * Records that the jobs running on this node are alive and fails the running jobs whose node
+   * stopped sending heartbeats, such as the jobs of this node before a restart, so they can be
+   * resumed. Jobs of the other nodes that are up keep running.
+   */
+  private void heartbeat() {
+    try {
+      resourceReindexer.heartbeat(running.keySet());
+      int stale =
+        resourceReindexer.failStale(
+          Instant.now().minusMillis(bulkReindexProperties.getStaleAfterMillis()));
+      if (stale > 0) {
+        log.warn("{} reindex jobs failed, their node stopped", stale);
+      }
+    } catch (RuntimeException e) {
+      // an exception would cancel the schedule
+      log.warn("Recording the reindex job heartbeat failed", e);
+    }
+  }
+
+  private void launch(ReindexJob job) {
+    Progress progress = new Progress(job.getRangesTotal(), job.getRangesCompleted());
+    if (running.putIfAbsent(job.getId(), progress) != null) {
+      throw new PreconditionFailedException("Reindex job " + job.getId() + " is still running");
+    }
+    pool.execute(() -> run(job.getId(), progress));
+  }
+
+  private void run(String jobId, Progress progress) {
+    try {
+      List<Long> rangeIds = resourceReindexer.findPendingRanges(jobId);
+      new RangeTask(jobId, rangeIds, progress).invoke();
+
+      boolean updated =
+        progress.failedRanges.get() > 0
+          ? resourceReindexer.fail(
+            jobId,
+            progress.failedRanges.get() + " ranges failed, resume the job to reindex them again")
+          : resourceReindexer.complete(jobId);
+      if (!updated) {
+        log.warn("Reindex job {} was failed while it ran, its status is left failed", jobId);
+      }
+      log.info("Reindex job {} finished: {}", jobId, progress);
+    } catch (RuntimeException e) {
+      log.warn("Reindex job {} failed", jobId, e);
+      resourceReindexer.fail(jobId, e.getMessage());
+    } finally {
+      running.remove(jobId);
+    }
+  }
+
+  private void reindex(String jobId, Long rangeId, Progress progress) {
+    int reindexed;
+    try {
+      reindexed = resourceReindexer.reindex(rangeId);
+    } catch (RuntimeException e) {
+      // the range stays pending and is retried when the job is resumed
+      log.warn("Reindex job {}: range {} failed", jobId, rangeId, e);
+      progress.failedRanges.incrementAndGet();
+      return;
+    }
+
+    progress.rangeCompleted(reindexed);
+    if (rateLimiter != null && reindexed > 0) {
+      rateLimiter.acquire(reindexed);
+    }
+    if (progress.reportDue(bulkReindexProperties.getReportIntervalSeconds())) {
+      log.info("Reindex job {}: {}", jobId, progress);
+    }
+  }
+
+  private class RangeTask extends RecursiveAction {
+
+    private final String jobId;
+
+    private final List<Long> rangeIds;
+
+    private final Progress progress;
+
+    RangeTask(String jobId, List<Long> rangeIds, Progress progress) {
+      this.jobId = jobId;
+      this.rangeIds = rangeIds;
+      this.progress = progress;
+    }
+
+    @Override
+    protected void compute() {
+      if (rangeIds.size() == 1) {
+        reindex(jobId, rangeIds.get(0), progress);
+      } else if (rangeIds.size() > 1) {
+        int middle = rangeIds.size() / 2;
+        invokeAll(
+          new RangeTask(jobId, rangeIds.subList(0, middle), progress),
+          new RangeTask(jobId, rangeIds.subList(middle, rangeIds.size()), progress));
+      }
+    }
+  }
+
+  /** Throughput and estimated time to completion of one run of a job */
+  public static class Progress {
+
+    private final long startNanos = System.nanoTime();
+
+    private final int rangesTotal;
+
+    private final int rangesCompletedBefore;
+
+    private final AtomicInteger rangesCompleted = new AtomicInteger();
+
+    private final AtomicInteger failedRanges = new AtomicInteger();
+
+    private final AtomicLong resourcesReindexed = new AtomicLong();
+
+    private final AtomicLong lastReportNanos = new AtomicLong(startNanos);
+
+    Progress(int rangesTotal, int rangesCompletedBefore) {
+      this.rangesTotal = rangesTotal;
+      this.rangesCompletedBefore = rangesCompletedBefore;
+    }
+
+    public double resourcesPerSecond() {
+      return resourcesReindexed.get() / Math.max(elapsed().toMillis() / 1000d, 0.001);
+    }
+
+    /** Remaining time extrapolated from the ranges completed in this run, null before the first */
+    public Duration eta() {
+      int completed = rangesCompleted.get();
+      if (completed == 0) {
+        return null;
+      }
+      int remaining = rangesTotal - rangesCompletedBefore - completed;
+      return elapsed().multipliedBy(Math.max(remaining, 0)).dividedBy(completed);
+    }
+
+    void rangeCompleted(int resources) {
+      rangesCompleted.incrementAndGet();
+      resourcesReindexed.addAndGet(resources);
+    }
+
+    boolean reportDue(long intervalSeconds) {
+      long now = System.nanoTime();
+      long last = lastReportNanos.get();
+      return now - last >= Duration.ofSeconds(intervalSeconds).toNanos()
+        && lastReportNanos.compareAndSet(last, now);
+    }
+
+    private Duration elapsed() {
+      return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "%d/%d ranges, %d resources in %d s (%.1f resources/s), %d ranges failed, ETA %s",
+        rangesCompletedBefore + rangesCompleted.get(),
+        rangesTotal,
+        resourcesReindexed.get(),
+        elapsed().getSeconds(),
+        resourcesPerSecond(),
+        failedRanges.get(),
+        eta() != null ? eta().getSeconds() + " s" : "unknown");
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package de.vitagroup.num.bulk;
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.model.DaoMethodOutcome;
+import ca.uhn.fhir.rest.api.server.storage.TransactionDetails;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import de.vitagroup.num.properties.BulkImportProperties;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes the chunks of a Patient import. Every chunk is one transaction that also moves the
+ * checkpoint of its {@link ImportJob}, so a failed import can be resumed after the last chunk
+ * that was committed.
+ *
+ * <p>Patients are written through the DAO without request details: the operation itself is
+ * authorized once, and instead of one audit message per patient the caller sends one per chunk.
+ */
+@Component
+@RequiredArgsConstructor
+public class PatientImporter {
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final DaoRegistry daoRegistry;
+
+  private final BulkImportProperties bulkImportProperties;
+
+  /** Creates a new job, or marks an existing one as running again to resume it */
+  @Transactional
+  public ImportJob start(String jobId) {
+    Instant now = Instant.now();
+
+    if (jobId == null) {
+      ImportJob job = new ImportJob();
+      job.setId(UUID.randomUUID().toString());
+      job.setStatus(ImportJob.Status.RUNNING);
+      job.setCreatedAt(now);
+      job.setUpdatedAt(now);
+      entityManager.persist(job);
+      return job;
+    }
+
+    ImportJob job = lock(jobId);
+    if (job.getStatus() != ImportJob.Status.COMPLETED) {
+      job.setStatus(ImportJob.Status.RUNNING);
+      job.setError(null);
+      job.setUpdatedAt(now);
+    }
+    return job;
+  }
+
+  @Transactional(readOnly = true)
+  public ImportJob find(String jobId) {
+    ImportJob job = entityManager.find(ImportJob.class, jobId);
+    if (job == null) {
+      throw new ResourceNotFoundException("Import job " + jobId + " not found");
+    }
+    return job;
+  }
+
+  /**
+   * Writes the patients read from the next lines of the stream and moves the checkpoint, and the
+   * digest of the committed lines, behind these lines.
+   *
+   * @return the ids of the written patients
+   */
+  @Transactional
+  public List<String> writeChunk(
+    String jobId,
+    long linesCommitted,
+    long lines,
+    String committedDigest,
+    List<Patient> patients) {
+    ImportJob job = lock(jobId);
+    if (job.getLinesCommitted() != linesCommitted) {
+      throw new PreconditionFailedException(
+        "Import job " + jobId + " has been continued by another request");
+    }
+
+    entityManager.unwrap(Session.class).setJdbcBatchSize(bulkImportProperties.getJdbcBatchSize());
+
+    IFhirResourceDao<Patient> patientDao = daoRegistry.getResourceDao(Patient.class);
+    TransactionDetails transactionDetails = new TransactionDetails();
+    List<String> patientIds = new ArrayList<>(patients.size());
+    for (Patient patient : patients) {
+      DaoMethodOutcome outcome =
+        patient.getIdElement().hasIdPart()
+          ? patientDao.update(patient, null, true, false, null, transactionDetails)
+          : patientDao.create(patient, null, true, transactionDetails, null);
+      patientIds.add(outcome.getId().getIdPart());
+    }
+
+    job.setLinesCommitted(linesCommitted + lines);
+    job.setCommittedDigest(committedDigest);
+    job.setChunksCommitted(job.getChunksCommitted() + 1);
+    job.setResourcesImported(job.getResourcesImported() + patients.size());
+    job.setUpdatedAt(Instant.now());
+    return patientIds;
+  }
+
+  @Transactional
+  public ImportJob complete(String jobId) {
+    ImportJob job = lock(jobId);
+    job.setStatus(ImportJob.Status.COMPLETED);
+    job.setUpdatedAt(Instant.now());
+    return job;
+  }
+
+  @Transactional
+  public ImportJob fail(String jobId, String error) {
+    ImportJob job = lock(jobId);
+    job.setStatus(ImportJob.Status.FAILED);
+    job.setError(StringUtils.abbreviate(error, MAX_ERROR_LENGTH));
+    job.setUpdatedAt(Instant.now());
+    return job;
+  }
+
+  private ImportJob lock(String jobId) {
+    ImportJob job = entityManager.find(ImportJob.class, jobId, LockModeType.PESSIMISTIC_WRITE);
+    if (job == null) {
+      throw new ResourceNotFoundException("Import job " + jobId + " not found");
+    }
+    return job;
+  }
+}
@@ -0,0 +1,65 @@
+package de.vitagroup.num.bulk;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Rebuild of the search parameter and fulltext indexes of all resources of some types. The
+ * resource ids are split into {@link ReindexRange}s when the job is created; ranges are the unit
+ * of work and of the checkpoint, a resumed job only reindexes the ranges not completed yet.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "NUM_REINDEX_JOB")
+public class ReindexJob {
+
+  public enum Status {
+    RUNNING,
+    FAILED,
+    COMPLETED
+  }
+
+  @Id
+  @Column(name = "ID", length = 36)
+  private String id;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "STATUS", nullable = false, length = 20)
+  private Status status;
+
+  /** Comma separated resource types */
+  @Column(name = "RESOURCE_TYPES", nullable = false, length = 200)
+  private String resourceTypes;
+
+  @Column(name = "RANGES_TOTAL", nullable = false)
+  private int rangesTotal;
+
+  @Column(name = "RANGES_COMPLETED", nullable = false)
+  private int rangesCompleted;
+
+  @Column(name = "RESOURCES_REINDEXED", nullable = false)
+  private long resourcesReindexed;
+
+  @Column(name = "CREATED_AT", nullable = false)
+  private Instant createdAt;
+
+  @Column(name = "UPDATED_AT", nullable = false)
+  private Instant updatedAt;
+
+  /** Last time the node running the job reported it alive */
+  @Column(name = "HEARTBEAT_AT")
+  private Instant heartbeatAt;
+
+  @Column(name = "ERROR", length = 1000)
+  private String error;
+}
@@ -0,0 +1,45 @@
+package de.vitagroup.num.bulk;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Resource ids {@code [fromId, toId)} of one type, reindexed in one transaction. */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(
+  name = "NUM_REINDEX_RANGE",
+  indexes = @Index(name = "IDX_REINDEX_RANGE_JOB", columnList = "JOB_ID,COMPLETED"))
+public class ReindexRange {
+
+  @Id
+  @SequenceGenerator(name = "SEQ_REINDEX_RANGE", sequenceName = "SEQ_REINDEX_RANGE")
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_REINDEX_RANGE")
+  @Column(name = "ID")
+  private Long id;
+
+  @Column(name = "JOB_ID", nullable = false, length = 36)
+  private String jobId;
+
+  @Column(name = "RESOURCE_TYPE", nullable = false, length = 40)
+  private String resourceType;
+
+  @Column(name = "FROM_ID", nullable = false)
+  private long fromId;
+
+  @Column(name = "TO_ID", nullable = false)
+  private long toId;
+
+  @Column(name = "COMPLETED", nullable = false)
+  private boolean completed;
+}
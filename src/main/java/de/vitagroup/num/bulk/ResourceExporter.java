@@ -0,0 +1,245 @@
+package de.vitagroup.num.bulk;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import de.vitagroup.num.properties.BulkExportProperties;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Database side of the bulk export: the job rows, and the cursor that streams the current version
+ * of every resource of a type to an NDJSON writer.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResourceExporter {
+
+  // current versions only, joined so the resource table rows are in the session when the
+  // resources are built from the history rows
+  private static final String EXPORT_QUERY =
+    "SELECT h, r FROM ResourceHistoryTable h, ResourceTable r"
+      + " WHERE h.myResourceId = r.myId AND h.myResourceVersion = r.myVersion"
+      + " AND r.myResourceType = :type AND r.myDeleted IS NULL"
+      + " AND r.myUpdated > :since AND r.myUpdated <= :until"
+      + " ORDER BY r.myId";
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final DaoRegistry daoRegistry;
+
+  private final FhirContext fhirContext;
+
+  private final BulkExportProperties bulkExportProperties;
+
+  @Transactional
+  public ExportJob create(Collection<String> resourceTypes, Instant since, String userId) {
+    Instant now = Instant.now();
+
+    ExportJob job = new ExportJob();
+    job.setId(UUID.randomUUID().toString());
+    job.setStatus(ExportJob.Status.QUEUED);
+    job.setResourceTypes(String.join(",", resourceTypes));
+    job.setSince(since);
+    job.setTransactionTime(now);
+    job.setUserId(userId);
+    job.setCreatedAt(now);
+    job.setUpdatedAt(now);
+    entityManager.persist(job);
+    return job;
+  }
+
+  @Transactional(readOnly = true)
+  public ExportJob find(String jobId) {
+    ExportJob job = entityManager.find(ExportJob.class, jobId);
+    if (job == null) {
+      throw new ResourceNotFoundException("Export job " + jobId + " not found");
+    }
+    return job;
+  }
+
+  /**
+   * Moves the job from queued to running. The status changes below are conditional updates, so
+   * a job {@link #failStale} failed in the meantime stays failed.
+   *
+   * @return the started job, null if it is no longer queued
+   */
+  @Transactional
+  public ExportJob start(String jobId) {
+    int updated =
+      entityManager
+        .createQuery(
+          "UPDATE ExportJob j SET j.status = :running, j.updatedAt = :now"
+            + " WHERE j.id = :id AND j.status = :queued")
+        .setParameter("running", ExportJob.Status.RUNNING)
+        .setParameter("now", Instant.now())
+        .setParameter("id", jobId)
+        .setParameter("queued", ExportJob.Status.QUEUED)
+        .executeUpdate();
+    return updated == 0 ? null : find(jobId);
+  }
+
+  /** @return false if the job is no longer running */
+  @Transactional
+  public boolean complete(String jobId, long resourceCount) {
+    int updated =
+      entityManager
+        .createQuery(
+          "UPDATE ExportJob j SET j.status = :completed, j.resourceCount = :resourceCount,"
+            + " j.updatedAt = :now WHERE j.id = :id AND j.status = :running")
+        .setParameter("completed", ExportJob.Status.COMPLETED)
+        .setParameter("resourceCount", resourceCount)
+        .setParameter("now", Instant.now())
+        .setParameter("id", jobId)
+        .setParameter("running", ExportJob.Status.RUNNING)
+        .executeUpdate();
+    return updated > 0;
+  }
+
+  /** @return false if the job is no longer running */
+  @Transactional
+  public boolean fail(String jobId, String error) {
+    int updated =
+      entityManager
+        .createQuery(
+          "UPDATE ExportJob j SET j.status = :failed, j.error = :error, j.updatedAt = :now"
+            + " WHERE j.id = :id AND j.status = :running")
+        .setParameter("failed", ExportJob.Status.FAILED)
+        .setParameter("error", StringUtils.abbreviate(error, MAX_ERROR_LENGTH))
+        .setParameter("now", Instant.now())
+        .setParameter("id", jobId)
+        .setParameter("running", ExportJob.Status.RUNNING)
+        .executeUpdate();
+    return updated > 0;
+  }
+
+  /** Records that the queued or running jobs are still held by this node */
+  @Transactional
+  public void heartbeat(Collection<String> jobIds) {
+    if (jobIds.isEmpty()) {
+      return;
+    }
+    entityManager
+      .createQuery("UPDATE ExportJob j SET j.heartbeatAt = :now WHERE j.id IN :ids")
+      .setParameter("now", Instant.now())
+      .setParameter("ids", new ArrayList<>(jobIds))
+      .executeUpdate();
+  }
+
+  /**
+   * Marks queued or running jobs without a heartbeat since the instant as failed: the node holding
+   * them stopped. Jobs of nodes that are up are left alone.
+   */
+  @Transactional
+  public int failStale(Instant staleBefore) {
+    return entityManager
+      .createQuery(
+        "UPDATE ExportJob j SET j.status = :failed, j.error = :error, j.updatedAt = :now"
+          + " WHERE j.status IN (:queued, :running)"
+          + " AND COALESCE(j.heartbeatAt, j.updatedAt) < :staleBefore")
+      .setParameter("failed", ExportJob.Status.FAILED)
+      .setParameter("error", "Interrupted by a stop of the service")
+      .setParameter("now", Instant.now())
+      .setParameter("queued", ExportJob.Status.QUEUED)
+      .setParameter("running", ExportJob.Status.RUNNING)
+      .setParameter("staleBefore", staleBefore)
+      .executeUpdate();
+  }
+
+  @Transactional(readOnly = true)
+  public List<String> findCreatedBefore(Instant instant) {
+    return entityManager
+      .createQuery("SELECT j.id FROM ExportJob j WHERE j.createdAt < :instant", String.class)
+      .setParameter("instant", instant)
+      .getResultList();
+  }
+
+  @Transactional
+  public void delete(String jobId) {
+    ExportJob job = entityManager.find(ExportJob.class, jobId);
+    if (job != null) {
+      entityManager.remove(job);
+    }
+  }
+
+  /**
+   * Writes every resource of the type changed in the time window of the job as one line. Rows are
+   * read through a forward only cursor and the session is cleared after every fetch, so memory
+   * use does not depend on the number of resources. The ids of exported patients are handed to
+   * the consumer in groups of at most {@code patientGroupSize}.
+   *
+   * @return the number of resources written
+   */
+  @Transactional(readOnly = true)
+  public long export(
+    ExportJob job,
+    String resourceType,
+    Writer writer,
+    int patientGroupSize,
+    Consumer<List<String>> patientConsumer)
+    throws IOException {
+    IFhirResourceDao<?> dao = daoRegistry.getResourceDao(resourceType);
+    IParser parser = fhirContext.newJsonParser();
+    int fetchSize = Math.max(1, bulkExportProperties.getFetchSize());
+    boolean patients = Patient.class.getSimpleName().equals(resourceType);
+    List<String> patientIds = new ArrayList<>();
+
+    Session session = entityManager.unwrap(Session.class);
+    long count = 0;
+    try (ScrollableResults results =
+      session
+        .createQuery(EXPORT_QUERY)
+        .setParameter("type", resourceType)
+        .setParameter("since", Date.from(job.getSince() != null ? job.getSince() : Instant.EPOCH))
+        .setParameter("until", Date.from(job.getTransactionTime()))
+        .setFetchSize(fetchSize)
+        .setReadOnly(true)
+        .scroll(ScrollMode.FORWARD_ONLY)) {
+      while (results.next()) {
+        IBaseResource resource = dao.toResource((ResourceHistoryTable) results.get(0), false);
+        parser.encodeResourceToWriter(resource, writer);
+        writer.write('\n');
+
+        if (patients) {
+          patientIds.add(resource.getIdElement().getIdPart());
+          if (patientIds.size() >= patientGroupSize) {
+            patientConsumer.accept(patientIds);
+            patientIds = new ArrayList<>();
+          }
+        }
+        if (++count % fetchSize == 0) {
+          session.clear();
+        }
+      }
+    }
+
+    if (!patientIds.isEmpty()) {
+      patientConsumer.accept(patientIds);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,242 @@
+package de.vitagroup.num.bulk;
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import de.vitagroup.num.search.FulltextIndexer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Database side of the mass reindex: the job and range rows, and the reindex of one range. Every
+ * range is reindexed in its own transaction that also marks it completed, so the ranges are the
+ * checkpoints of the job.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResourceReindexer {
+
+  private static final String RANGE_QUERY =
+    "SELECT r FROM ResourceTable r"
+      + " WHERE r.myResourceType = :type AND r.myId >= :fromId AND r.myId < :toId"
+      + " AND r.myDeleted IS NULL"
+      + " ORDER BY r.myId";
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final DaoRegistry daoRegistry;
+
+  private final FulltextIndexer fulltextIndexer;
+
+  /**
+   * Creates the job and splits the ids of every resource type, up to the highest id at this
+   * point, into ranges of {@code rangeSize} ids.
+   */
+  @Transactional
+  public ReindexJob create(Collection<String> resourceTypes, int rangeSize) {
+    Instant now = Instant.now();
+
+    ReindexJob job = new ReindexJob();
+    job.setId(UUID.randomUUID().toString());
+    job.setStatus(ReindexJob.Status.RUNNING);
+    job.setResourceTypes(String.join(",", resourceTypes));
+    job.setCreatedAt(now);
+    job.setUpdatedAt(now);
+    entityManager.persist(job);
+
+    int ranges = 0;
+    for (String resourceType : resourceTypes) {
+      Object[] bounds =
+        (Object[])
+          entityManager
+            .createQuery(
+              "SELECT MIN(r.myId), MAX(r.myId) FROM ResourceTable r WHERE r.myResourceType = :type")
+            .setParameter("type", resourceType)
+            .getSingleResult();
+      if (bounds[0] == null) {
+        continue;
+      }
+
+      long maxId = (Long) bounds[1];
+      for (long fromId = (Long) bounds[0]; fromId <= maxId; fromId += rangeSize) {
+        ReindexRange range = new ReindexRange();
+        range.setJobId(job.getId());
+        range.setResourceType(resourceType);
+        range.setFromId(fromId);
+        range.setToId(Math.min(fromId + rangeSize, maxId + 1));
+        entityManager.persist(range);
+        ranges++;
+      }
+    }
+    job.setRangesTotal(ranges);
+    return job;
+  }
+
+  @Transactional(readOnly = true)
+  public ReindexJob find(String jobId) {
+    ReindexJob job = entityManager.find(ReindexJob.class, jobId);
+    if (job == null) {
+      throw new ResourceNotFoundException("Reindex job " + jobId + " not found");
+    }
+    return job;
+  }
+
+  /**
+   * Marks a failed job as running again to resume it, completed jobs are left alone. A running job
+   * is held by a node, or is failed once its node stopped sending heartbeats.
+   */
+  @Transactional
+  public ReindexJob start(String jobId) {
+    ReindexJob job = entityManager.find(ReindexJob.class, jobId, LockModeType.PESSIMISTIC_WRITE);
+    if (job == null) {
+      throw new ResourceNotFoundException("Reindex job " + jobId + " not found");
+    }
+    if (job.getStatus() == ReindexJob.Status.RUNNING) {
+      throw new PreconditionFailedException("Reindex job " + jobId + " is still running");
+    }
+    if (job.getStatus() != ReindexJob.Status.COMPLETED) {
+      job.setStatus(ReindexJob.Status.RUNNING);
+      job.setError(null);
+      job.setUpdatedAt(Instant.now());
+    }
+    return job;
+  }
+
+  @Transactional(readOnly = true)
+  public List<Long> findPendingRanges(String jobId) {
+    return entityManager
+      .createQuery(
+        "SELECT r.id FROM ReindexRange r WHERE r.jobId = :jobId AND r.completed = false"
+          + " ORDER BY r.id",
+        Long.class)
+      .setParameter("jobId", jobId)
+      .getResultList();
+  }
+
+  /**
+   * Rebuilds the search parameter and fulltext indexes of the resources in the range and marks
+   * the range completed.
+   *
+   * @return the number of resources reindexed
+   */
+  @Transactional
+  public int reindex(Long rangeId) {
+    ReindexRange range = entityManager.find(ReindexRange.class, rangeId);
+    if (range.isCompleted()) {
+      return 0;
+    }
+
+    IFhirResourceDao<IBaseResource> dao = daoRegistry.getResourceDao(range.getResourceType());
+    List<ResourceTable> entities =
+      entityManager
+        .createQuery(RANGE_QUERY, ResourceTable.class)
+        .setParameter("type", range.getResourceType())
+        .setParameter("fromId", range.getFromId())
+        .setParameter("toId", range.getToId())
+        .getResultList();
+
+    Map<ResourceTable, IBaseResource> resourcesByEntity = new LinkedHashMap<>();
+    for (ResourceTable entity : entities) {
+      IBaseResource resource = dao.toResource(entity, false);
+      dao.reindex(resource, entity);
+      resourcesByEntity.put(entity, resource);
+    }
+    fulltextIndexer.index(resourcesByEntity);
+
+    range.setCompleted(true);
+    entityManager
+      .createQuery(
+        "UPDATE ReindexJob j SET j.rangesCompleted = j.rangesCompleted + 1,"
+          + " j.resourcesReindexed = j.resourcesReindexed + :count, j.updatedAt = :now"
+          + " WHERE j.id = :jobId")
+      .setParameter("count", (long) entities.size())
+      .setParameter("now", Instant.now())
+      .setParameter("jobId", range.getJobId())
+      .executeUpdate();
+    return entities.size();
+  }
+
+  /** @return false if the job is no longer running, {@link #failStale} failed it meanwhile */
+  @Transactional
+  public boolean complete(String jobId) {
+    int updated =
+      entityManager
+        .createQuery(
+          "UPDATE ReindexJob j SET j.status = :completed, j.updatedAt = :now"
+            + " WHERE j.id = :id AND j.status = :running")
+        .setParameter("completed", ReindexJob.Status.COMPLETED)
+        .setParameter("now", Instant.now())
+        .setParameter("id", jobId)
+        .setParameter("running", ReindexJob.Status.RUNNING)
+        .executeUpdate();
+    return updated > 0;
+  }
+
+  /** @return false if the job is no longer running */
+  @Transactional
+  public boolean fail(String jobId, String error) {
+    int updated =
+      entityManager
+        .createQuery(
+          "UPDATE ReindexJob j SET j.status = :failed, j.error = :error, j.updatedAt = :now"
+            + " WHERE j.id = :id AND j.status = :running")
+        .setParameter("failed", ReindexJob.Status.FAILED)
+        .setParameter("error", StringUtils.abbreviate(error, MAX_ERROR_LENGTH))
+        .setParameter("now", Instant.now())
+        .setParameter("id", jobId)
+        .setParameter("running", ReindexJob.Status.RUNNING)
+        .executeUpdate();
+    return updated > 0;
+  }
+
+  /** Records that the running jobs are still held by this node */
+  @Transactional
+  public void heartbeat(Collection<String> jobIds) {
+    if (jobIds.isEmpty()) {
+      return;
+    }
+    entityManager
+      .createQuery("UPDATE ReindexJob j SET j.heartbeatAt = :now WHERE j.id IN :ids")
+      .setParameter("now", Instant.now())
+      .setParameter("ids", new ArrayList<>(jobIds))
+      .executeUpdate();
+  }
+
+  /**
+   * Marks running jobs without a sign of life since the instant as failed, so they can be
+   * resumed: the node running them stopped. A sign of life is a heartbeat or a completed range,
+   * which bumps the update time. Jobs of nodes that are up are left alone.
+   */
+  @Transactional
+  public int failStale(Instant staleBefore) {
+    return entityManager
+      .createQuery(
+        "UPDATE ReindexJob j SET j.status = :failed, j.error = :error, j.updatedAt = :now"
+          + " WHERE j.status = :running AND j.updatedAt < :staleBefore"
+          + " AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)")
+      .setParameter("failed", ReindexJob.Status.FAILED)
+      .setParameter("error", "Interrupted by a stop of the service")
+      .setParameter("now", Instant.now())
+      .setParameter("running", ReindexJob.Status.RUNNING)
+      .setParameter("staleBefore", staleBefore)
+      .executeUpdate();
+  }
+}
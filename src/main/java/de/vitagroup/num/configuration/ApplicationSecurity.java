@@ -1,5 +1,15 @@
 package de.vitagroup.num.configuration;
 
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import de.vitagroup.num.security.JwkSetCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementServerProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -9,13 +19,26 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.oauth2.server.resource.OAuth2ResourceServerConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
+@RequiredArgsConstructor
 public class ApplicationSecurity extends WebSecurityConfigurerAdapter {
 
-  private static final String[] AUTH_WHITELIST = {"/swagger-*/**", "/v2/**", "/v3/**"};
+  private static final String[] AUTH_WHITELIST = {
+    "/swagger-*/**", "/v2/**", "/v3/**", "/actuator/health"
+  };
+
+  private static final String PROMETHEUS_PATH = "/actuator/prometheus";
+
+  private final ManagementServerProperties managementServerProperties;
 
   @Override
   public void configure(HttpSecurity httpSecurity) throws Exception {
@@ -37,8 +60,48 @@ public class ApplicationSecurity extends WebSecurityConfigurerAdapter {
       .jwt();
   }
 
+  /** Verifies tokens locally against the prefetched Keycloak keys */
+  @Bean
+  public JwtDecoder jwtDecoder(JwkSetCache jwkSetCache, MeterRegistry meterRegistry) {
+    DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+    jwtProcessor.setJWSKeySelector(jwkSetCache);
+    jwtProcessor.setJWSVerifierFactory(jwkSetCache);
+    // claims are validated by spring security
+    jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+
+    NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+    Timer validTimer = meterRegistry.timer("jwt.verification", "outcome", "valid");
+    Timer invalidTimer = meterRegistry.timer("jwt.verification", "outcome", "invalid");
+
+    return token -> {
+      long start = System.nanoTime();
+      try {
+        Jwt jwt = decoder.decode(token);
+        validTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return jwt;
+      } catch (JwtException e) {
+        invalidTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        throw e;
+      }
+    };
+  }
+
   @Override
   public void configure(WebSecurity web) {
-    web.ignoring().antMatchers(AUTH_WHITELIST);
+    web.ignoring()
+      .antMatchers(AUTH_WHITELIST)
+      .requestMatchers(
+        new AndRequestMatcher(new AntPathRequestMatcher(PROMETHEUS_PATH), this::onManagementPort));
+  }
+
+  /**
+   * Metrics are scraped without a token only on the separate management port, which is not
+   * exposed outside the cluster. Anywhere else they need a token like every other request.
+   */
+  private boolean onManagementPort(HttpServletRequest request) {
+    Integer managementPort = managementServerProperties.getPort();
+    return managementPort != null
+      && managementPort > 0
+      && request.getLocalPort() == managementPort;
   }
 }
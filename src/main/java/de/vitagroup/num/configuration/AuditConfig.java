@@ -1,9 +1,10 @@
 package de.vitagroup.num.configuration;
 
+import de.vitagroup.num.audit.StreamingDicomSerializationStrategy;
 import de.vitagroup.num.properties.AuditProperties;
+import de.vitagroup.num.properties.AuditProperties.Marshaller;
 import java.io.IOException;
 import java.io.Writer;
-import java.time.format.DateTimeFormatterBuilder;
 import lombok.RequiredArgsConstructor;
 import org.jdom2.Element;
 import org.openehealth.ipf.commons.audit.AuditContext;
@@ -25,7 +26,7 @@ public class AuditConfig {
   public AuditContext auditContext() {
     DefaultAuditContext auditContext = new DefaultAuditContext();
 
-    auditContext.setSerializationStrategy(
+    SerializationStrategy jdomStrategy =
       new SerializationStrategy() {
 
         // Custom with correct EventDate length
@@ -36,7 +37,12 @@ public class AuditConfig {
           throws IOException {
           dicom.marshal(auditMessage, writer, pretty);
         }
-      });
+      };
+
+    auditContext.setSerializationStrategy(
+      auditProperties.getMarshaller() == Marshaller.JDOM
+        ? jdomStrategy
+        : new StreamingDicomSerializationStrategy(jdomStrategy));
 
     auditContext.setAuditEnabled(true);
     auditContext.setAuditEnterpriseSiteId("Central transactional repository");
@@ -55,10 +61,8 @@ public class AuditConfig {
       // Fix to long ISO8601 string
       element.setAttribute(
         "EventDateTime",
-        new DateTimeFormatterBuilder()
-          .appendInstant(5)
-          .toFormatter()
-          .format(eventIdentification.getEventDateTime()));
+        StreamingDicomSerializationStrategy.EVENT_DATE_TIME_FORMATTER.format(
+          eventIdentification.getEventDateTime()));
       return element;
     }
   }
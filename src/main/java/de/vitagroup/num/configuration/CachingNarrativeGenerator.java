@@ -0,0 +1,57 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.narrative.INarrativeGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Narrative;
+
+/**
+ * Narratives rendered by the delegate, keyed by the versioned resource id. A version never
+ * changes, so entries are only evicted by size. Resources without a versioned id are rendered
+ * every time.
+ */
+public class CachingNarrativeGenerator implements INarrativeGenerator {
+
+  private static final String CACHE_NAME = "narrativeCache";
+
+  private final INarrativeGenerator delegate;
+
+  private final Cache<String, Narrative> cache;
+
+  public CachingNarrativeGenerator(
+    INarrativeGenerator delegate, long maximumSize, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    cache = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  @Override
+  public boolean populateResourceNarrative(FhirContext theFhirContext, IBaseResource theResource) {
+    IIdType id = theResource.getIdElement();
+    if (!(theResource instanceof DomainResource) || id == null || !id.hasVersionIdPart()) {
+      return delegate.populateResourceNarrative(theFhirContext, theResource);
+    }
+
+    DomainResource resource = (DomainResource) theResource;
+    String key = id.toUnqualified().getValue();
+    Narrative cached = cache.getIfPresent(key);
+    if (cached != null) {
+      resource.setText(cached.copy());
+      return true;
+    }
+
+    // the Thymeleaf generator reports false even when it rendered a narrative
+    delegate.populateResourceNarrative(theFhirContext, resource);
+    if (resource.getText().isEmpty()) {
+      return false;
+    }
+    cache.put(key, resource.getText().copy());
+    return true;
+  }
+}
@@ -0,0 +1,129 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.dao.r4.FhirResourceDaoPatientR4;
+import ca.uhn.fhir.jpa.model.cross.IBasePersistedResource;
+import ca.uhn.fhir.jpa.model.entity.BaseHasResource;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.IPreResourceAccessDetails;
+import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.SimplePreResourceAccessDetails;
+import ca.uhn.fhir.rest.api.server.SimplePreResourceShowDetails;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor.ActionRequestDetails;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import java.util.EnumSet;
+import java.util.Set;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Patient DAO answering reads and vreads of the current version from the {@link
+ * PatientReadCache}. Cached reads fire the same interceptor pointcuts as reads from the database,
+ * so authorization, consent and audit see no difference. Only plain REST reads are cached; reads
+ * inside a transaction bundle or on behalf of other operations always go to the database.
+ */
+public class CachingPatientDao extends FhirResourceDaoPatientR4 {
+
+  private static final Set<RestOperationTypeEnum> CACHED_OPERATIONS =
+    EnumSet.of(RestOperationTypeEnum.READ, RestOperationTypeEnum.VREAD);
+
+  private final PatientReadCache readCache;
+
+  public CachingPatientDao(PatientReadCache readCache) {
+    this.readCache = readCache;
+  }
+
+  @Override
+  public Patient read(IIdType theId, RequestDetails theRequest, boolean theDeletedOk) {
+    if (isCached(theId, theRequest) && !TransactionSynchronizationManager.isActualTransactionActive()) {
+      PatientReadCache.Entry entry = readCache.get(theId.getIdPart());
+      if (entry != null && isVersion(theId, entry.getVersion())) {
+        notifyRead(theId, theRequest);
+        Patient patient = getContext().newJsonParser().parseResource(Patient.class, entry.getEncoded());
+        patient.setId(
+          new IdType(getResourceName(), theId.getIdPart(), Long.toString(entry.getVersion())));
+        return show(theId, theRequest, patient);
+      }
+    }
+    return super.read(theId, theRequest, theDeletedOk);
+  }
+
+  @Override
+  public Patient doRead(IIdType theId, RequestDetails theRequest, boolean theDeletedOk) {
+    if (!isCached(theId, theRequest)) {
+      return super.doRead(theId, theRequest, theDeletedOk);
+    }
+
+    long stamp = readCache.stamp();
+    notifyRead(theId, theRequest);
+    BaseHasResource entity = readEntity(theId, theRequest);
+    Patient patient = toResource(Patient.class, entity, null, false);
+
+    if (entity.getDeleted() != null) {
+      if (!theDeletedOk) {
+        throw createResourceGoneException((IBasePersistedResource) entity);
+      }
+    } else if (entity instanceof ResourceTable && !ReadReplicaRoutingDataSource.usesReplica()) {
+      // history entities are older versions, only the current one is cached; the replica may lag
+      // behind a write that already evicted the entry, so only reads of the primary are cached
+      readCache.put(
+        theId.getIdPart(),
+        entity.getVersion(),
+        getContext().newJsonParser().encodeResourceToString(patient),
+        stamp);
+    }
+
+    return show(theId, theRequest, patient);
+  }
+
+  private boolean isCached(IIdType theId, RequestDetails theRequest) {
+    return theRequest != null
+      && CACHED_OPERATIONS.contains(theRequest.getRestOperationType())
+      && theId.hasIdPart()
+      && (!theId.hasResourceType() || getResourceName().equals(theId.getResourceType()));
+  }
+
+  private static boolean isVersion(IIdType theId, long version) {
+    return !theId.hasVersionIdPart() || Long.toString(version).equals(theId.getVersionIdPart());
+  }
+
+  private void notifyRead(IIdType theId, RequestDetails theRequest) {
+    ActionRequestDetails requestDetails =
+      new ActionRequestDetails(theRequest, getResourceName(), theId);
+    RestOperationTypeEnum operationType =
+      theId.hasVersionIdPart() ? RestOperationTypeEnum.VREAD : RestOperationTypeEnum.READ;
+    notifyInterceptors(operationType, requestDetails);
+  }
+
+  /** Runs the pre-access and pre-show pointcuts, like every read from the database does */
+  private Patient show(IIdType theId, RequestDetails theRequest, Patient patient) {
+    SimplePreResourceAccessDetails accessDetails = new SimplePreResourceAccessDetails(patient);
+    HookParams params =
+      new HookParams()
+        .add(IPreResourceAccessDetails.class, accessDetails)
+        .add(RequestDetails.class, theRequest)
+        .addIfMatchesType(ServletRequestDetails.class, theRequest);
+    JpaInterceptorBroadcaster.doCallHooks(
+      myInterceptorBroadcaster, theRequest, Pointcut.STORAGE_PREACCESS_RESOURCES, params);
+    if (accessDetails.isDontReturnResourceAtIndex(0)) {
+      throw new ResourceNotFoundException(theId);
+    }
+
+    SimplePreResourceShowDetails showDetails = new SimplePreResourceShowDetails(patient);
+    params =
+      new HookParams()
+        .add(IPreResourceShowDetails.class, showDetails)
+        .add(RequestDetails.class, theRequest)
+        .addIfMatchesType(ServletRequestDetails.class, theRequest);
+    JpaInterceptorBroadcaster.doCallHooks(
+      myInterceptorBroadcaster, theRequest, Pointcut.STORAGE_PRESHOW_RESOURCES, params);
+    return (Patient) showDetails.getResource(0);
+  }
+}
@@ -0,0 +1,27 @@
+package de.vitagroup.num.configuration;
+
+import de.vitagroup.num.properties.CompressionProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@RequiredArgsConstructor
+public class CompressionConfig {
+
+  private static final String FHIR_PATH = "/fhir/*";
+
+  private final CompressionProperties compressionProperties;
+
+  @Bean
+  public FilterRegistrationBean<CompressionFilter> compressionFilter() {
+    FilterRegistrationBean<CompressionFilter> registration =
+      new FilterRegistrationBean<>(
+        new CompressionFilter(
+          compressionProperties.getMinResponseSize(), compressionProperties.getMimeTypes()));
+    registration.addUrlPatterns(FHIR_PATH);
+    registration.setEnabled(compressionProperties.isEnabled());
+    return registration;
+  }
+}
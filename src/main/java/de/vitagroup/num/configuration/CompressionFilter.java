@@ -0,0 +1,350 @@
+package de.vitagroup.num.configuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Compresses FHIR responses with the encoding the client prefers in {@code Accept-Encoding},
+ * gzip or deflate. The first {@code minResponseSize} bytes are held back to decide whether the
+ * response is large enough; after that the body is compressed as it is written, so responses
+ * stream to the client without being buffered in full.
+ *
+ * <p>HAPI would gzip on its own, without a threshold and without deflate. It is shown an identity
+ * {@code Accept-Encoding}, so compression happens here only. Responses that already carry a
+ * {@code Content-Encoding}, such as the bulk export downloads, are passed through.
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+  /** Request attribute with the {@code Accept-Encoding} the client sent */
+  public static final String ACCEPT_ENCODING_ATTRIBUTE =
+    CompressionFilter.class.getName() + ".acceptEncoding";
+
+  private static final String GZIP = "gzip";
+
+  private static final String DEFLATE = "deflate";
+
+  private static final String IDENTITY = "identity";
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final int minResponseSize;
+
+  private final Set<String> mimeTypes;
+
+  public CompressionFilter(int minResponseSize, List<String> mimeTypes) {
+    this.minResponseSize = minResponseSize;
+    this.mimeTypes = new HashSet<>(mimeTypes);
+  }
+
+  @Override
+  protected void doFilterInternal(
+    HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+    throws ServletException, IOException {
+    String encoding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    if (encoding == null) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    request.setAttribute(ACCEPT_ENCODING_ATTRIBUTE, request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    CompressingResponse compressingResponse = new CompressingResponse(response, encoding);
+    try {
+      filterChain.doFilter(new IdentityEncodingRequest(request), compressingResponse);
+    } finally {
+      compressingResponse.finish();
+    }
+  }
+
+  /** The {@code Accept-Encoding} the client sent, also where HAPI is shown identity */
+  public static String acceptEncoding(HttpServletRequest request) {
+    Object acceptEncoding = request.getAttribute(ACCEPT_ENCODING_ATTRIBUTE);
+    return acceptEncoding != null
+      ? (String) acceptEncoding
+      : request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+  }
+
+  /** Whether the coding is accepted with a quality above 0, by name or by {@code *} */
+  public static boolean accepts(String acceptEncoding, String coding) {
+    return quality(qualities(acceptEncoding), coding) > 0;
+  }
+
+  /** Quality of every coding listed in {@code Accept-Encoding}, keyed by the lower case coding */
+  private static Map<String, Double> qualities(String acceptEncoding) {
+    Map<String, Double> qualities = new HashMap<>();
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return qualities;
+    }
+    for (String element : StringUtils.split(acceptEncoding, ',')) {
+      String[] parts = StringUtils.split(element, ';');
+      if (parts.length == 0 || parts[0].isBlank()) {
+        continue;
+      }
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      qualities.put(parts[0].trim().toLowerCase(), quality);
+    }
+    return qualities;
+  }
+
+  /**
+   * Returns gzip or deflate, whichever has the higher quality, or null if neither is accepted. A
+   * coding listed by name takes its own quality, {@code *} only stands for the ones not listed.
+   */
+  static String negotiate(String acceptEncoding) {
+    Map<String, Double> qualities = qualities(acceptEncoding);
+    double gzip = quality(qualities, GZIP);
+    double deflate = quality(qualities, DEFLATE);
+    if (gzip <= 0 && deflate <= 0) {
+      return null;
+    }
+    // prefer gzip when both are accepted with the same quality
+    return gzip >= deflate ? GZIP : DEFLATE;
+  }
+
+  private static double quality(Map<String, Double> qualities, String coding) {
+    Double quality = qualities.getOrDefault(coding, qualities.get("*"));
+    return quality != null ? quality : 0;
+  }
+
+  private static class IdentityEncodingRequest extends HttpServletRequestWrapper {
+
+    IdentityEncodingRequest(HttpServletRequest request) {
+      super(request);
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(name) ? IDENTITY : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      return HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(name)
+        ? Collections.enumeration(Collections.singletonList(IDENTITY))
+        : super.getHeaders(name);
+    }
+  }
+
+  private class CompressingResponse extends HttpServletResponseWrapper {
+
+    private final String encoding;
+
+    private CompressingOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    private long contentLength = -1;
+
+    CompressingResponse(HttpServletResponse response, String encoding) {
+      super(response);
+      this.encoding = encoding;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (writer != null) {
+        throw new IllegalStateException("getWriter() has already been called");
+      }
+      return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        if (outputStream != null) {
+          throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+      }
+      return writer;
+    }
+
+    /** The length is only known once it is decided whether the body is compressed */
+    @Override
+    public void setContentLength(int len) {
+      contentLength = len;
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+      contentLength = len;
+    }
+
+    /**
+     * Forwarded once it is decided whether the body is compressed, an earlier flush would commit
+     * the headers without the {@code Content-Encoding}
+     */
+    @Override
+    public void flushBuffer() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (outputStream != null) {
+        outputStream.flush();
+        if (outputStream.isDecided()) {
+          super.flushBuffer();
+        }
+      }
+    }
+
+    void finish() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (outputStream != null) {
+        outputStream.finish();
+      } else if (contentLength >= 0) {
+        super.setContentLengthLong(contentLength);
+      }
+    }
+
+    private CompressingOutputStream stream() throws IOException {
+      if (outputStream == null) {
+        outputStream = new CompressingOutputStream(this, super.getOutputStream());
+      }
+      return outputStream;
+    }
+
+    private boolean compressible() {
+      if (getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+        return false;
+      }
+      if (contentLength >= 0 && contentLength < minResponseSize) {
+        return false;
+      }
+      String contentType = getContentType();
+      return contentType != null
+        && mimeTypes.contains(StringUtils.substringBefore(contentType, ";").trim());
+    }
+  }
+
+  private class CompressingOutputStream extends ServletOutputStream {
+
+    private final CompressingResponse response;
+
+    private final ServletOutputStream target;
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /** Null until it is decided whether to compress */
+    private OutputStream out;
+
+    private boolean finished;
+
+    CompressingOutputStream(CompressingResponse response, ServletOutputStream target) {
+      this.response = response;
+      this.target = target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (out != null) {
+        out.write(b, off, len);
+        return;
+      }
+      pending.write(b, off, len);
+      if (pending.size() >= minResponseSize) {
+        decide(true);
+      }
+    }
+
+    /** Flushes once the decision is made, small responses are held back until they are done */
+    @Override
+    public void flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+
+    void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (out == null) {
+        decide(false);
+      }
+      if (out instanceof DeflaterOutputStream) {
+        ((DeflaterOutputStream) out).finish();
+      }
+      out.flush();
+    }
+
+    boolean isDecided() {
+      return out != null;
+    }
+
+    @Override
+    public boolean isReady() {
+      return target.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      target.setWriteListener(writeListener);
+    }
+
+    private void decide(boolean largeEnough) throws IOException {
+      if (largeEnough && response.compressible()) {
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, response.encoding);
+        out =
+          GZIP.equals(response.encoding)
+            ? new GZIPOutputStream(target, BUFFER_SIZE, true)
+            : new DeflaterOutputStream(target, new Deflater(), BUFFER_SIZE, true);
+      } else {
+        if (response.contentLength >= 0) {
+          response.getResponse().setContentLengthLong(response.contentLength);
+        } else if (!largeEnough) {
+          response.getResponse().setContentLengthLong(pending.size());
+        }
+        out = target;
+      }
+      pending.writeTo(out);
+      pending = null;
+    }
+  }
+}
@@ -1,52 +1,177 @@
 package de.vitagroup.num.configuration;
 
 import ca.uhn.fhir.context.ConfigurationException;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDaoPatient;
 import ca.uhn.fhir.jpa.config.BaseJavaConfigR4;
 import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
 import de.vitagroup.num.properties.HapiProperties;
 import de.vitagroup.num.properties.HibernateProperties;
-import lombok.AllArgsConstructor;
+import de.vitagroup.num.properties.ReadReplicaProperties;
+import de.vitagroup.num.properties.SearchIndexingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.beans.factory.annotation.Autowire;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Primary;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
 @Configuration
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class FhirServerConfigR4 extends BaseJavaConfigR4 {
 
+  private static final String[] ENTITY_PACKAGES = {
+    "ca.uhn.fhir.jpa.model.entity",
+    "ca.uhn.fhir.jpa.entity",
+    "de.vitagroup.num.abac",
+    "de.vitagroup.num.bulk",
+    "de.vitagroup.num.search"
+  };
+
   private final DataSource myDataSource;
   private final HibernateProperties hibernateProperties;
   private final HapiProperties hapiProperties;
+  private final SearchIndexingProperties searchIndexingProperties;
+  private final ReadReplicaProperties readReplicaProperties;
+  private final MeterRegistry meterRegistry;
+
+  private HikariDataSource replicaDataSource;
+
+  @Bean
+  @Primary
+  @Override
+  public FhirContext fhirContextR4() {
+    if (!isSlimMode()) {
+      return super.fhirContextR4();
+    }
+
+    FhirContext retVal = new SupportedTypesFhirContext(FhirVersionEnum.R4, slimResourceTypes());
+    retVal.getParserOptions().setDontStripVersionsFromReferencesAtPaths("AuditEvent.entity.what");
+    return retVal;
+  }
+
+  @Bean(name = "myDaoRegistry")
+  @Override
+  public DaoRegistry daoRegistry() {
+    if (!isSlimMode()) {
+      return super.daoRegistry();
+    }
+    return new SupportedTypesDaoRegistry(fhirContextR4(), slimResourceTypes());
+  }
 
   @Override
   public DatabaseBackedPagingProvider databaseBackedPagingProvider() {
-    DatabaseBackedPagingProvider pagingProvider = super.databaseBackedPagingProvider();
+    DatabaseBackedPagingProvider pagingProvider = new InstrumentedPagingProvider(meterRegistry);
     pagingProvider.setDefaultPageSize(hapiProperties.getDefault_page_size());
     pagingProvider.setMaximumPageSize(hapiProperties.getMax_page_size());
     return pagingProvider;
   }
 
+  @Bean(name = "myPatientDaoR4", autowire = Autowire.BY_NAME)
+  @Lazy
+  @Override
+  public IFhirResourceDaoPatient<Patient> daoPatientR4() {
+    if (!hapiProperties.getPatient_read_cache_enabled()) {
+      return super.daoPatientR4();
+    }
+
+    CachingPatientDao retVal = new CachingPatientDao(patientReadCache());
+    retVal.setResourceType(Patient.class);
+    retVal.setContext(fhirContextR4());
+    return retVal;
+  }
+
+  @Bean
+  @Lazy
+  public PatientReadCache patientReadCache() {
+    PatientReadCache cache =
+      new PatientReadCache(
+        hapiProperties.getPatient_read_cache_size(),
+        Duration.ofSeconds(hapiProperties.getPatient_read_cache_ttl_seconds()),
+        meterRegistry);
+    jpaInterceptorService().registerInterceptor(cache);
+    return cache;
+  }
+
   @Bean
   @Override
   public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
     LocalContainerEntityManagerFactoryBean retVal = super.entityManagerFactory();
     retVal.setPersistenceUnitName("HAPI_PU");
+    retVal.setPackagesToScan(ENTITY_PACKAGES);
 
     try {
-      retVal.setDataSource(myDataSource);
+      retVal.setDataSource(
+        readReplicaProperties.isEnabled() ? readReplicaRoutingDataSource() : myDataSource);
     } catch (Exception e) {
       throw new ConfigurationException("Could not set the data source due to a configuration issue", e);
     }
 
-    retVal.setJpaProperties(hibernateProperties.getProperties());
+    Properties jpaProperties = new Properties();
+    jpaProperties.putAll(hibernateProperties.getProperties());
+    if (searchIndexingProperties.isAsync()) {
+      // resources are indexed from the IndexQueue after their transaction has committed
+      jpaProperties.put("hibernate.search.indexing_strategy", "manual");
+    }
+    retVal.setJpaProperties(jpaProperties);
     return retVal;
   }
 
+  /**
+   * The replica pool is not a bean, a second DataSource bean would switch off the auto-configured
+   * primary one. Pool metrics are published by Hikari itself, tagged with the pool name.
+   */
+  private DataSource readReplicaRoutingDataSource() {
+    replicaDataSource = new HikariDataSource();
+    replicaDataSource.setPoolName("replica");
+    replicaDataSource.setJdbcUrl(readReplicaProperties.getUrl());
+    replicaDataSource.setUsername(readReplicaProperties.getUsername());
+    replicaDataSource.setPassword(readReplicaProperties.getPassword());
+    replicaDataSource.setMaximumPoolSize(readReplicaProperties.getMaximumPoolSize());
+    replicaDataSource.setReadOnly(true);
+    if (myDataSource instanceof HikariDataSource) {
+      HikariDataSource primary = (HikariDataSource) myDataSource;
+      replicaDataSource.setDriverClassName(primary.getDriverClassName());
+      replicaDataSource.setDataSourceProperties(primary.getDataSourceProperties());
+    }
+    replicaDataSource.setMetricRegistry(meterRegistry);
+
+    return new ReadReplicaRoutingDataSource(myDataSource, replicaDataSource, meterRegistry);
+  }
+
+  @PreDestroy
+  public void closeReplica() {
+    if (replicaDataSource != null) {
+      replicaDataSource.close();
+    }
+  }
+
+  private boolean isSlimMode() {
+    return hapiProperties.getSlim_mode() && !hapiProperties.getSupportedResourceTypes().isEmpty();
+  }
+
+  /** The supported types and the SearchParameter type BaseJpaRestfulServer always adds */
+  private Set<String> slimResourceTypes() {
+    Set<String> resourceTypes = new LinkedHashSet<>(hapiProperties.getSupportedResourceTypes());
+    resourceTypes.add("SearchParameter");
+    return resourceTypes;
+  }
+
   @Bean
   @Primary
   public JpaTransactionManager hapiTransactionManager(EntityManagerFactory entityManagerFactory) {
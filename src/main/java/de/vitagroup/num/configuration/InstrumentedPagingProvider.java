@@ -0,0 +1,33 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the lookup of stored search results when a client fetches a further page, tagged by
+ * whether the search was still available.
+ */
+public class InstrumentedPagingProvider extends DatabaseBackedPagingProvider {
+
+  private final Timer foundTimer;
+
+  private final Timer expiredTimer;
+
+  public InstrumentedPagingProvider(MeterRegistry meterRegistry) {
+    foundTimer = meterRegistry.timer("fhir.paging.fetch", "outcome", "found");
+    expiredTimer = meterRegistry.timer("fhir.paging.fetch", "outcome", "expired");
+  }
+
+  @Override
+  public IBundleProvider retrieveResultList(RequestDetails theRequestDetails, String theId) {
+    long start = System.nanoTime();
+    IBundleProvider resultList = super.retrieveResultList(theRequestDetails, theId);
+    Timer timer = resultList == null ? expiredTimer : foundTimer;
+    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    return resultList;
+  }
+}
@@ -0,0 +1,107 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Value;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Latest version of recently read patients, encoded as JSON and keyed by the logical id. Entries
+ * are invalidated when an update or delete of the patient commits, both before and after the
+ * commit, so a read running concurrently with the write cannot put the old version back.
+ *
+ * <p>Registered on the JPA interceptor service, so writes that do not come through the REST
+ * server invalidate the cache as well.
+ *
+ * <p>Invalidation only sees the writes of this node. With more than one node a patient written
+ * elsewhere is served in its cached version until the entry expires after {@code
+ * hapi.fhir.patient_read_cache_ttl_seconds}, so the cache is meant for single node deployments.
+ */
+public class PatientReadCache {
+
+  private static final String CACHE_NAME = "patientReadCache";
+
+  private final Cache<String, Entry> cache;
+
+  /** Incremented on every invalidation, lets a read detect a write that overtook it */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public PatientReadCache(long maximumSize, Duration timeToLive, MeterRegistry meterRegistry) {
+    cache =
+      Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  /** Returns the cached entry, or null if the patient is not cached */
+  public Entry get(String idPart) {
+    return cache.getIfPresent(idPart);
+  }
+
+  /** Stamp to pass to {@link #put} for a read that starts now */
+  public long stamp() {
+    return invalidations.get();
+  }
+
+  /** Caches the version read, unless the patient may have been changed since the read started */
+  public void put(String idPart, long version, String encoded, long stamp) {
+    Entry entry = new Entry(version, encoded);
+    cache
+      .asMap()
+      .compute(idPart, (key, current) -> invalidations.get() == stamp ? entry : current);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+  public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+    invalidate(theNewResource);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+  public void resourceDeleted(IBaseResource theResource) {
+    invalidate(theResource);
+  }
+
+  private void invalidate(IBaseResource resource) {
+    if (!(resource instanceof Patient)) {
+      return;
+    }
+
+    String idPart = resource.getIdElement().getIdPart();
+    invalidate(idPart);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            invalidate(idPart);
+          }
+        });
+    }
+  }
+
+  private void invalidate(String idPart) {
+    invalidations.incrementAndGet();
+    cache.invalidate(idPart);
+  }
+
+  @Value
+  public static class Entry {
+
+    long version;
+
+    String encoded;
+  }
+}
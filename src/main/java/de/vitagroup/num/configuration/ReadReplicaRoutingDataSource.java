@@ -0,0 +1,60 @@
+package de.vitagroup.num.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the read replica to the transactions of the current thread after
+ * {@link #useReplica} was called, and of the primary otherwise. The routing is decided when the
+ * transaction opens its connection, so it has to be set before the transaction starts.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  public enum Pool {
+    PRIMARY,
+    REPLICA
+  }
+
+  private static final ThreadLocal<Pool> CURRENT_POOL = new ThreadLocal<>();
+
+  private final Counter primaryConnections;
+
+  private final Counter replicaConnections;
+
+  public ReadReplicaRoutingDataSource(
+    DataSource primary, DataSource replica, MeterRegistry meterRegistry) {
+    setTargetDataSources(Map.of(Pool.PRIMARY, primary, Pool.REPLICA, replica));
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+
+    primaryConnections = meterRegistry.counter("fhir.datasource.routed", "pool", "primary");
+    replicaConnections = meterRegistry.counter("fhir.datasource.routed", "pool", "replica");
+  }
+
+  public static void useReplica(boolean replica) {
+    if (replica) {
+      CURRENT_POOL.set(Pool.REPLICA);
+    } else {
+      CURRENT_POOL.remove();
+    }
+  }
+
+  /** Whether the transactions of the current thread use the replica */
+  public static boolean usesReplica() {
+    return CURRENT_POOL.get() == Pool.REPLICA;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    Pool pool = CURRENT_POOL.get();
+    if (pool == Pool.REPLICA) {
+      replicaConnections.increment();
+      return Pool.REPLICA;
+    }
+    primaryConnections.increment();
+    return Pool.PRIMARY;
+  }
+}
@@ -0,0 +1,263 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import com.carrotsearch.hppc.LongLongHashMap;
+import de.vitagroup.num.properties.HapiProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Current version and last update of the resources of the supported types, for conditional reads
+ * that can be answered without loading the resource. Only resources with a server assigned id are
+ * held: that id is the numeric resource pid, so the maps are keyed by a primitive long and an entry
+ * costs a key and a packed value. The map is loaded once the application is ready and kept current
+ * by the create, update and delete commits.
+ *
+ * <p>Entries never go back to an older version, so a commit running concurrently with the load or
+ * with another commit cannot replace the newer state. Deleted resources are kept as deleted
+ * entries for the same reason.
+ *
+ * <p>The map is kept current by the commits of this node only, another node writing to the same
+ * database leaves it behind. It is meant for single node deployments.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ResourceVersionMap {
+
+  private static final String LOAD_QUERY =
+    "SELECT r.myResourceType, r.myId, r.myVersion, r.myUpdated"
+      + " FROM ResourceTable r LEFT JOIN r.myForcedId f"
+      + " WHERE r.myDeleted IS NULL AND f.myId IS NULL";
+
+  private static final String LOAD_TYPES_CLAUSE = " AND r.myResourceType IN :types";
+
+  private static final int LOAD_FETCH_SIZE = 10000;
+
+  /** Segments per resource type, each segment is locked on its own */
+  private static final int SEGMENTS = 64;
+
+  /** Bits of the packed value taken by the version, the deleted flag takes the lowest bit */
+  private static final int VERSION_BITS = 27;
+
+  private static final long MAX_VERSION = (1L << VERSION_BITS) - 1;
+
+  /** Longest id part that always fits into a long */
+  private static final int MAX_ID_LENGTH = 18;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final IInterceptorService interceptorService;
+
+  private final HapiProperties hapiProperties;
+
+  private final MeterRegistry meterRegistry;
+
+  private final Map<String, Segment[]> versionsByType = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  public void registerHooks() {
+    if (hapiProperties.getVersion_map_enabled()) {
+      interceptorService.registerInterceptor(this);
+      Gauge.builder("fhir.resource.version.map.size", this, ResourceVersionMap::size)
+        .register(meterRegistry);
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional(readOnly = true)
+  public void load() {
+    if (!hapiProperties.getVersion_map_enabled()) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    List<String> resourceTypes = new ArrayList<>(hapiProperties.getSupportedResourceTypes());
+    TypedQuery<Object[]> query =
+      entityManager
+        .createQuery(
+          resourceTypes.isEmpty() ? LOAD_QUERY : LOAD_QUERY + LOAD_TYPES_CLAUSE, Object[].class)
+        .setHint("org.hibernate.fetchSize", LOAD_FETCH_SIZE)
+        .setHint("org.hibernate.readOnly", true);
+    if (!resourceTypes.isEmpty()) {
+      query.setParameter("types", resourceTypes);
+    }
+
+    long[] rows = new long[1];
+    try (Stream<Object[]> results = query.getResultStream()) {
+      results.forEach(
+        columns -> {
+          put((String) columns[0], (Long) columns[1], (Long) columns[2], (Date) columns[3], false);
+          rows[0]++;
+        });
+    }
+    log.info(
+      "Loaded {} resource versions in {} ms", rows[0], System.currentTimeMillis() - start);
+  }
+
+  /** Returns the current version of the resource, or null if it is not held */
+  public Entry get(String resourceType, String idPart) {
+    Segment[] segments = versionsByType.get(resourceType);
+    long id = toId(idPart);
+    if (segments == null || id < 0) {
+      return null;
+    }
+
+    long value = segment(segments, id).get(id);
+    if (value == 0) {
+      return null;
+    }
+    return new Entry(
+      (value >>> 1) & MAX_VERSION,
+      TimeUnit.SECONDS.toMillis(value >>> (VERSION_BITS + 1)),
+      (value & 1) != 0);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+  public void resourceCreated(IBaseResource theResource) {
+    afterCommit(theResource, false);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+  public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+    afterCommit(theNewResource, false);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+  public void resourceDeleted(IBaseResource theResource) {
+    afterCommit(theResource, true);
+  }
+
+  private void afterCommit(IBaseResource resource, boolean deleted) {
+    String resourceType = resource.fhirType();
+    long id = toId(resource.getIdElement().getIdPart());
+    Long version = resource.getIdElement().getVersionIdPartAsLong();
+    Date lastUpdated = resource.getMeta().getLastUpdated();
+    if (!isHeld(resourceType) || id < 0 || version == null || lastUpdated == null) {
+      return;
+    }
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            put(resourceType, id, version, lastUpdated, deleted);
+          }
+        });
+    } else {
+      put(resourceType, id, version, lastUpdated, deleted);
+    }
+  }
+
+  private void put(String resourceType, long id, long version, Date lastUpdated, boolean deleted) {
+    Segment segment =
+      segment(versionsByType.computeIfAbsent(resourceType, key -> newSegments()), id);
+    if (version > MAX_VERSION) {
+      // too many versions to pack, the resource is read from the database from now on
+      segment.remove(id);
+      return;
+    }
+
+    // rounded up to the second, If-Modified-Since has no finer resolution
+    long lastUpdatedSeconds = (lastUpdated.getTime() + 999) / 1000;
+    segment.put(
+      id, lastUpdatedSeconds << (VERSION_BITS + 1) | version << 1 | (deleted ? 1 : 0));
+  }
+
+  private boolean isHeld(String resourceType) {
+    List<String> resourceTypes = hapiProperties.getSupportedResourceTypes();
+    return resourceTypes.isEmpty() || resourceTypes.contains(resourceType);
+  }
+
+  private long size() {
+    long size = 0;
+    for (Segment[] segments : versionsByType.values()) {
+      for (Segment segment : segments) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /** The pid of a server assigned id, -1 for client assigned ids */
+  private static long toId(String idPart) {
+    if (idPart == null || idPart.length() > MAX_ID_LENGTH || !StringUtils.isNumeric(idPart)) {
+      return -1;
+    }
+    return Long.parseLong(idPart);
+  }
+
+  private static Segment[] newSegments() {
+    Segment[] segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment();
+    }
+    return segments;
+  }
+
+  private static Segment segment(Segment[] segments, long id) {
+    return segments[(int) ((id ^ (id >>> 32)) & (SEGMENTS - 1))];
+  }
+
+  @Value
+  public static class Entry {
+
+    long version;
+
+    /** Last update, rounded up to the second */
+    long lastUpdated;
+
+    boolean deleted;
+  }
+
+  private static class Segment {
+
+    private final LongLongHashMap values = new LongLongHashMap();
+
+    synchronized long get(long id) {
+      return values.get(id);
+    }
+
+    /** Stores the value unless a newer version is held already */
+    synchronized void put(long id, long value) {
+      long current = values.get(id);
+      if (((value >>> 1) & MAX_VERSION) > ((current >>> 1) & MAX_VERSION)) {
+        values.put(id, value);
+      }
+    }
+
+    synchronized void remove(long id) {
+      values.remove(id);
+    }
+
+    synchronized int size() {
+      return values.size();
+    }
+  }
+}
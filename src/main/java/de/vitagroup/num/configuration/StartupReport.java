@@ -0,0 +1,109 @@
+package de.vitagroup.num.configuration;
+
+import de.vitagroup.num.properties.StartupProperties;
+import de.vitagroup.num.search.FulltextIndexer;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline.TimelineEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs how the boot time splits into its phases and publishes them as {@code startup.phase}
+ * timers. The phases are taken from the steps recorded by the {@link BufferingApplicationStartup}
+ * set up in {@code Application.main}; the Lucene index is opened here, before the application
+ * reports itself ready, so the first fulltext search does not pay for it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StartupReport {
+
+  public static final String SERVER_INITIALIZE_STEP = "fhir.server.initialize";
+
+  private static final String CONTEXT_REFRESH_STEP = "spring.context.refresh";
+
+  private static final String BEAN_INSTANTIATE_STEP = "spring.beans.instantiate";
+
+  private static final String BEAN_NAME_TAG = "beanName";
+
+  private static final String ENTITY_MANAGER_BEAN = "entityManagerFactory";
+
+  private final ApplicationStartup applicationStartup;
+
+  private final FulltextIndexer fulltextIndexer;
+
+  private final StartupProperties startupProperties;
+
+  private final MeterRegistry meterRegistry;
+
+  /** Keeps only the steps the report is made of */
+  public static boolean isReported(StartupStep step) {
+    return CONTEXT_REFRESH_STEP.equals(step.getName())
+      || BEAN_INSTANTIATE_STEP.equals(step.getName())
+      || SERVER_INITIALIZE_STEP.equals(step.getName());
+  }
+
+  @EventListener
+  public void applicationReady(ApplicationReadyEvent event) {
+    Map<String, Duration> phases = new LinkedHashMap<>();
+    if (applicationStartup instanceof BufferingApplicationStartup) {
+      for (TimelineEvent timelineEvent :
+        ((BufferingApplicationStartup) applicationStartup).drainBufferedTimeline().getEvents()) {
+        String phase = phase(timelineEvent.getStartupStep());
+        if (phase != null) {
+          phases.put(phase, timelineEvent.getDuration());
+        }
+      }
+    }
+
+    long started = System.nanoTime();
+    int indexedResources = fulltextIndexer.openIndex();
+    phases.put("lucene.open", Duration.ofNanos(System.nanoTime() - started));
+
+    Duration uptime = Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime());
+    phases.forEach(
+      (phase, duration) -> meterRegistry.timer("startup.phase", "phase", phase).record(duration));
+    log.info(
+      "Started in {} ms: {} ({} resources in the fulltext index)",
+      uptime.toMillis(),
+      phases.entrySet().stream()
+        .map(phase -> phase.getKey() + " " + phase.getValue().toMillis() + " ms")
+        .collect(Collectors.joining(", ")),
+      indexedResources);
+
+    if (startupProperties.isExitAfterStart()) {
+      System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+  }
+
+  private static String phase(StartupStep step) {
+    switch (step.getName()) {
+      case CONTEXT_REFRESH_STEP:
+        return "context.refresh";
+      case SERVER_INITIALIZE_STEP:
+        return "fhir.server.initialize";
+      case BEAN_INSTANTIATE_STEP:
+        boolean entityManager =
+          StreamSupport.stream(step.getTags().spliterator(), false)
+            .anyMatch(
+              tag -> BEAN_NAME_TAG.equals(tag.getKey())
+                && ENTITY_MANAGER_BEAN.equals(tag.getValue()));
+        return entityManager ? "entity.manager" : null;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * DAO registry of {@code hapi.fhir.slim_mode}. HAPI's registry collects its DAOs by type, which
+ * creates the DAO bean of every resource type of the model before dropping the unsupported ones.
+ * This one looks up the DAOs of the supported types by their bean name, so the other DAO beans
+ * are never created.
+ */
+public class SupportedTypesDaoRegistry extends DaoRegistry {
+
+  private static final String DAO_BEAN_NAME = "my%sDaoR4";
+
+  private ApplicationContext applicationContext;
+
+  private volatile Set<String> resourceTypes;
+
+  private volatile boolean initialized;
+
+  public SupportedTypesDaoRegistry(FhirContext fhirContext, Collection<String> resourceTypes) {
+    super(fhirContext);
+    setSupportedResourceTypes(resourceTypes);
+  }
+
+  @Override
+  public void setApplicationContext(ApplicationContext theApplicationContext)
+    throws BeansException {
+    applicationContext = theApplicationContext;
+    super.setApplicationContext(theApplicationContext);
+  }
+
+  @Override
+  public void setSupportedResourceTypes(Collection<String> theSupportedResourceTypes) {
+    super.setSupportedResourceTypes(theSupportedResourceTypes);
+    resourceTypes =
+      theSupportedResourceTypes == null ? null : new LinkedHashSet<>(theSupportedResourceTypes);
+    initialized = false;
+  }
+
+  @Override
+  public <T extends IBaseResource> IFhirResourceDao<T> getResourceDaoOrNull(
+    String theResourceName) {
+    if (!initialized && resourceTypes != null) {
+      initialize();
+    }
+    return super.getResourceDaoOrNull(theResourceName);
+  }
+
+  private synchronized void initialize() {
+    if (initialized) {
+      return;
+    }
+
+    List<IFhirResourceDao> resourceDaos = new ArrayList<>();
+    for (String resourceType : resourceTypes) {
+      String beanName = String.format(DAO_BEAN_NAME, resourceType);
+      if (applicationContext.containsBean(beanName)) {
+        resourceDaos.add(applicationContext.getBean(beanName, IFhirResourceDao.class));
+      }
+    }
+    setResourceDaos(resourceDaos);
+    initialized = true;
+  }
+}
@@ -0,0 +1,29 @@
+package de.vitagroup.num.configuration;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * FHIR context of {@code hapi.fhir.slim_mode}. HAPI walks {@link #getResourceTypes()} to load the
+ * built-in search parameters, which scans the model classes of every resource type; here it only
+ * lists the supported types. Any other type is still scanned when it is first used, like the
+ * Bundle of a search response or the type of a reference.
+ */
+public class SupportedTypesFhirContext extends FhirContext {
+
+  private final Set<String> resourceTypes;
+
+  public SupportedTypesFhirContext(FhirVersionEnum version, Collection<String> resourceTypes) {
+    super(version);
+    this.resourceTypes = Collections.unmodifiableSet(new LinkedHashSet<>(resourceTypes));
+  }
+
+  @Override
+  public Set<String> getResourceTypes() {
+    return resourceTypes;
+  }
+}
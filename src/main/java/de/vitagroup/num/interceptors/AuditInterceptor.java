@@ -1,13 +1,25 @@
 package de.vitagroup.num.interceptors;
 
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import ca.uhn.fhir.rest.server.interceptor.consent.ConsentOutcome;
 import ca.uhn.fhir.rest.server.interceptor.consent.IConsentContextServices;
 import ca.uhn.fhir.rest.server.interceptor.consent.IConsentService;
+import de.vitagroup.num.audit.AsyncAuditSender;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Patient;
 import org.openehealth.ipf.commons.audit.AuditContext;
@@ -17,7 +29,6 @@ import org.openehealth.ipf.commons.audit.event.PatientRecordBuilder;
 import org.openehealth.ipf.commons.audit.model.ActiveParticipantType;
 import org.openehealth.ipf.commons.audit.model.AuditMessage;
 import org.openehealth.ipf.commons.audit.types.EventType;
-import org.springframework.security.core.context.SecurityContextHolder;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -38,6 +49,23 @@ public class AuditInterceptor implements IConsentService {
 
   private static final String PATIENT_PATH_PREFIX = "Patient/";
 
+  private static final String DISCLOSED_PATIENTS_KEY =
+    AuditInterceptor.class.getName() + ".disclosedPatients";
+
+  /**
+   * Operations audited with one message listing all patients instead of one per patient. Type
+   * level operations such as $lookup return patients the same way a search does; the bulk
+   * operations audit the patients they write or export themselves.
+   */
+  private static final Set<RestOperationTypeEnum> AGGREGATED_OPERATIONS =
+    EnumSet.of(
+      RestOperationTypeEnum.SEARCH_TYPE,
+      RestOperationTypeEnum.SEARCH_SYSTEM,
+      RestOperationTypeEnum.GET_PAGE,
+      RestOperationTypeEnum.TRANSACTION,
+      RestOperationTypeEnum.EXTENDED_OPERATION_TYPE,
+      RestOperationTypeEnum.EXTENDED_OPERATION_SERVER);
+
   private static final String SUCCESS_LOG_MESSAGE =
     "{}: {} request for {} executed successfully by userid {}";
 
@@ -46,16 +74,71 @@ public class AuditInterceptor implements IConsentService {
 
   private final AuditContext auditContext;
 
+  private final AsyncAuditSender auditSender;
+
+  private final int maxParticipantsPerMessage;
+
+  private final InterceptorMetrics interceptorMetrics;
+
+  /**
+   * Collects the patients of search, paging and transaction responses, including patients added
+   * by _include and patients only referenced by the location of a transaction response entry.
+   */
+  @Override
+  public ConsentOutcome willSeeResource(
+    RequestDetails theRequestDetails,
+    IBaseResource theResource,
+    IConsentContextServices theContextServices) {
+    if (!AGGREGATED_OPERATIONS.contains(theRequestDetails.getRestOperationType())) {
+      return ConsentOutcome.PROCEED;
+    }
+
+    if (theResource instanceof Patient) {
+      addDisclosedPatient(theRequestDetails, theResource.getIdElement().getIdPart());
+    } else if (theResource instanceof Bundle) {
+      for (BundleEntryComponent entry : ((Bundle) theResource).getEntry()) {
+        String location = entry.hasResponse() ? entry.getResponse().getLocation() : null;
+        if (StringUtils.startsWith(location, PATIENT_PATH_PREFIX)) {
+          addDisclosedPatient(theRequestDetails, new IdType(location).getIdPart());
+        }
+      }
+    }
+    return ConsentOutcome.PROCEED;
+  }
+
   @Override
   public void completeOperationSuccess(
     RequestDetails theRequestDetails, IConsentContextServices theContextServices) {
-    String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+    interceptorMetrics.record(
+      InterceptorMetrics.AUDIT, theRequestDetails, () -> auditSuccess(theRequestDetails));
+  }
 
-    if (RequestTypeEnum.GET.equals(theRequestDetails.getRequestType())) {
+  @Override
+  public void completeOperationFailure(
+    RequestDetails theRequestDetails,
+    BaseServerResponseException theException,
+    IConsentContextServices theContextServices) {
+    if (theException instanceof NotModifiedException) {
+      // a conditional read answered with 304 confirms the version the client holds, it is a read
+      completeOperationSuccess(theRequestDetails, theContextServices);
+      return;
+    }
+    interceptorMetrics.record(
+      InterceptorMetrics.AUDIT,
+      theRequestDetails,
+      () -> auditFailure(theRequestDetails, theException));
+  }
+
+  private void auditSuccess(RequestDetails theRequestDetails) {
+    String userId = RequestPrincipal.of(theRequestDetails).getUserName();
+
+    if (AGGREGATED_OPERATIONS.contains(theRequestDetails.getRestOperationType())) {
+      sendDisclosedPatients(theRequestDetails, userId);
+    } else if (RequestTypeEnum.GET.equals(theRequestDetails.getRequestType())) {
       String requestPath = theRequestDetails.getRequestPath();
       if (requestPath.startsWith(PATIENT_PATH_PREFIX)) {
         IdType patientId = new IdType(requestPath);
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.Success,
             userId,
@@ -70,7 +153,7 @@ public class AuditInterceptor implements IConsentService {
     } else if (RequestTypeEnum.PUT.equals(theRequestDetails.getRequestType())) {
       if (theRequestDetails.getResource().getClass().isAssignableFrom(Patient.class)) {
         Patient resource = (Patient) theRequestDetails.getResource();
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.Success,
             userId,
@@ -91,7 +174,7 @@ public class AuditInterceptor implements IConsentService {
       String requestPath = theRequestDetails.getRequestPath();
       if (requestPath.startsWith(PATIENT_PATH_PREFIX)) {
         IdType patientId = new IdType(requestPath);
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.Success,
             userId,
@@ -111,7 +194,7 @@ public class AuditInterceptor implements IConsentService {
     } else if (RequestTypeEnum.POST.equals(theRequestDetails.getRequestType())) {
       if (theRequestDetails.getResource().getClass().isAssignableFrom(Patient.class)) {
         Patient resource = (Patient) theRequestDetails.getResource();
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.Success,
             userId,
@@ -131,19 +214,25 @@ public class AuditInterceptor implements IConsentService {
     }
   }
 
-  @Override
-  public void completeOperationFailure(
-    RequestDetails theRequestDetails,
-    BaseServerResponseException theException,
-    IConsentContextServices theContextServices) {
-
-    String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+  private void auditFailure(
+    RequestDetails theRequestDetails, BaseServerResponseException theException) {
+    String userId = RequestPrincipal.of(theRequestDetails).getUserName();
+    RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
 
-    if (RequestTypeEnum.GET.equals(theRequestDetails.getRequestType())) {
+    if (AGGREGATED_OPERATIONS.contains(operation)) {
+      // nothing was disclosed or written
+      log.info(
+        FAILURE_LOG_MESSAGE,
+        SYSTEM_NAME,
+        operation.getCode(),
+        theRequestDetails.getRequestPath(),
+        userId,
+        theException);
+    } else if (RequestTypeEnum.GET.equals(theRequestDetails.getRequestType())) {
       String requestPath = theRequestDetails.getRequestPath();
       if (requestPath.startsWith(PATIENT_PATH_PREFIX)) {
         IdType patientId = new IdType(requestPath);
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.MajorFailure,
             userId,
@@ -158,7 +247,7 @@ public class AuditInterceptor implements IConsentService {
     } else if (RequestTypeEnum.PUT.equals(theRequestDetails.getRequestType())) {
       if (theRequestDetails.getResource().getClass().isAssignableFrom(Patient.class)) {
         Patient resource = (Patient) theRequestDetails.getResource();
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.MajorFailure,
             userId,
@@ -180,7 +269,7 @@ public class AuditInterceptor implements IConsentService {
       String requestPath = theRequestDetails.getRequestPath();
       if (requestPath.startsWith(PATIENT_PATH_PREFIX)) {
         IdType patientId = new IdType(requestPath);
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.MajorFailure,
             userId,
@@ -201,7 +290,7 @@ public class AuditInterceptor implements IConsentService {
     } else if (RequestTypeEnum.POST.equals(theRequestDetails.getRequestType())) {
       if (theRequestDetails.getResource().getClass().isAssignableFrom(Patient.class)) {
         Patient resource = (Patient) theRequestDetails.getResource();
-        validateAndSend(
+        send(
           patientSuccessAuditMessage(
             EventOutcomeIndicator.MajorFailure,
             userId,
@@ -241,8 +330,59 @@ public class AuditInterceptor implements IConsentService {
       .getMessage();
   }
 
-  private void validateAndSend(AuditMessage auditMessage) {
-    auditMessage.validate();
-    auditContext.audit(auditMessage);
+  /**
+   * One message per request listing every patient as participant object, split only if the
+   * number of patients exceeds the configured maximum per message.
+   */
+  private void sendDisclosedPatients(RequestDetails theRequestDetails, String userId) {
+    RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
+    List<String> patientIds = new ArrayList<>(disclosedPatients(theRequestDetails));
+    if (patientIds.isEmpty()) {
+      log.info(
+        SUCCESS_LOG_MESSAGE,
+        SYSTEM_NAME,
+        operation.getCode(),
+        theRequestDetails.getRequestPath(),
+        userId);
+      return;
+    }
+
+    boolean transaction = RestOperationTypeEnum.TRANSACTION.equals(operation);
+    int chunkSize = Math.max(1, maxParticipantsPerMessage);
+    for (int from = 0; from < patientIds.size(); from += chunkSize) {
+      PatientRecordBuilder builder =
+        new PatientRecordBuilder(
+          EventOutcomeIndicator.Success,
+          transaction ? "Patients written by transaction" : "Patients disclosed by search",
+          transaction ? EventActionCode.Execute : EventActionCode.Read,
+          EventType.of(operation.getCode(), HL7_CODING_SYSTEM, operation.getCode()));
+      for (String patientId :
+        patientIds.subList(from, Math.min(from + chunkSize, patientIds.size()))) {
+        builder.addPatient(patientId, StringUtils.EMPTY, null);
+      }
+      send(
+        builder
+          .addActiveParticipant(new ActiveParticipantType(userId, true))
+          .setAuditSource(auditContext)
+          .getMessage());
+    }
+  }
+
+  private void addDisclosedPatient(RequestDetails theRequestDetails, String patientId) {
+    if (StringUtils.isNotEmpty(patientId)) {
+      disclosedPatients(theRequestDetails).add(patientId);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Set<String> disclosedPatients(RequestDetails theRequestDetails) {
+    return (Set<String>)
+      theRequestDetails
+        .getUserData()
+        .computeIfAbsent(DISCLOSED_PATIENTS_KEY, key -> new LinkedHashSet<String>());
+  }
+
+  private void send(AuditMessage auditMessage) {
+    auditSender.send(auditMessage);
   }
 }
@@ -0,0 +1,230 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.searchparam.registry.ISearchParamRegistry;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.IServerConformanceProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.Value;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+/**
+ * Serves {@code GET /metadata} from encoded bytes. The CapabilityStatement is built once per server
+ * base, since it carries the base URL, and encoded as JSON and XML, pretty and compact. Responses
+ * carry a strong ETag and answer a matching {@code If-None-Match} with 304. Only the configured
+ * server bases are cached: the base follows the client controlled {@code Host} header, requests
+ * for any other base are left to HAPI.
+ *
+ * <p>The statement only changes with the search parameters, so it is rebuilt when the search
+ * parameter registry has loaded different ones. Requests with {@code _summary} or {@code
+ * _elements} are left to HAPI.
+ */
+@Interceptor
+public class CapabilityStatementInterceptor {
+
+  private static final String VARY_HEADER = "Vary";
+
+  private static final Set<EncodingEnum> ENCODINGS =
+    EnumSet.of(EncodingEnum.JSON, EncodingEnum.XML);
+
+  private final RestfulServer server;
+
+  private final IServerConformanceProvider<?> conformanceProvider;
+
+  private final ISearchParamRegistry searchParamRegistry;
+
+  private final String cacheControl;
+
+  private final Set<String> cachedServerBases;
+
+  private volatile Statements statements;
+
+  public CapabilityStatementInterceptor(
+    RestfulServer server,
+    IServerConformanceProvider<?> conformanceProvider,
+    ISearchParamRegistry searchParamRegistry,
+    long maxAgeSeconds,
+    Collection<String> serverBases) {
+    this.server = server;
+    this.conformanceProvider = conformanceProvider;
+    this.searchParamRegistry = searchParamRegistry;
+    this.cacheControl = "public, max-age=" + maxAgeSeconds;
+    this.cachedServerBases = new HashSet<>();
+    for (String serverBase : serverBases) {
+      cachedServerBases.add(StringUtils.removeEnd(serverBase, "/"));
+    }
+  }
+
+  @Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+  public boolean incomingRequest(
+    RequestDetails theRequestDetails,
+    HttpServletRequest theRequest,
+    HttpServletResponse theResponse)
+    throws IOException {
+    if (theRequestDetails.getRestOperationType() != RestOperationTypeEnum.METADATA
+      || theRequestDetails.getRequestType() != RequestTypeEnum.GET
+      || theRequestDetails.getParameters().containsKey(Constants.PARAM_SUMMARY)
+      || theRequestDetails.getParameters().containsKey(Constants.PARAM_ELEMENTS)
+      || !cachedServerBases.contains(
+        StringUtils.removeEnd(theRequestDetails.getFhirServerBase(), "/"))) {
+      return true;
+    }
+
+    RestfulServerUtils.ResponseEncoding responseEncoding =
+      RestfulServerUtils.determineResponseEncodingWithDefault(theRequestDetails);
+    if (!ENCODINGS.contains(responseEncoding.getEncoding())) {
+      return true;
+    }
+    boolean prettyPrint = RestfulServerUtils.prettyPrintResponse(server, theRequestDetails);
+
+    Map<String, Rendering> renderings =
+      currentStatements()
+        .getServerBases()
+        .get(
+          theRequestDetails.getFhirServerBase(),
+          serverBase -> render(theRequest, theRequestDetails));
+    Rendering rendering = renderings.get(variant(responseEncoding.getEncoding(), prettyPrint));
+
+    theResponse.setHeader(Constants.HEADER_ETAG, rendering.getEtag());
+    theResponse.setHeader(Constants.HEADER_CACHE_CONTROL, cacheControl);
+    theResponse.addHeader(VARY_HEADER, Constants.HEADER_ACCEPT);
+
+    if (matches(theRequest.getHeader(Constants.HEADER_IF_NONE_MATCH), rendering.getEtag())) {
+      theResponse.setStatus(Constants.STATUS_HTTP_304_NOT_MODIFIED);
+      return false;
+    }
+
+    theResponse.setStatus(Constants.STATUS_HTTP_200_OK);
+    theResponse.setContentType(
+      responseEncoding.getResourceContentType() + Constants.CHARSET_UTF8_CTSUFFIX);
+    theResponse.setContentLength(rendering.getBody().length);
+    theResponse.getOutputStream().write(rendering.getBody());
+    return false;
+  }
+
+  /**
+   * Returns the statements built from the active search parameters. The registry replaces all of
+   * its maps on every refresh, hourly or after a SearchParameter was written, so unchanged maps
+   * mean unchanged parameters; after a refresh the content is compared before anything is rebuilt.
+   */
+  private Statements currentStatements() {
+    Statements current = statements;
+    if (current != null && !current.isStale(searchParamRegistry)) {
+      return current;
+    }
+
+    synchronized (this) {
+      current = statements;
+      if (current == null || current.isStale(searchParamRegistry)) {
+        Map<String, Map<String, RuntimeSearchParam>> searchParams = activeSearchParams();
+        Cache<String, Map<String, Rendering>> serverBases =
+          current != null && current.getSearchParams().equals(searchParams)
+            ? current.getServerBases()
+            : Caffeine.newBuilder().maximumSize(cachedServerBases.size()).build();
+        current = new Statements(searchParams, serverBases);
+        statements = current;
+      }
+      return current;
+    }
+  }
+
+  private Map<String, Map<String, RuntimeSearchParam>> activeSearchParams() {
+    FhirContext fhirContext = server.getFhirContext();
+    Map<String, Map<String, RuntimeSearchParam>> searchParams = new HashMap<>();
+    for (IResourceProvider resourceProvider : server.getResourceProviders()) {
+      String resourceType = fhirContext.getResourceType(resourceProvider.getResourceType());
+      searchParams.put(resourceType, searchParamRegistry.getActiveSearchParams(resourceType));
+    }
+    return searchParams;
+  }
+
+  private Map<String, Rendering> render(
+    HttpServletRequest theRequest, RequestDetails theRequestDetails) {
+    IBaseResource statement =
+      conformanceProvider.getServerConformance(theRequest, theRequestDetails);
+
+    Map<String, Rendering> renderings = new HashMap<>();
+    for (EncodingEnum encoding : ENCODINGS) {
+      for (boolean prettyPrint : new boolean[] {false, true}) {
+        byte[] body =
+          encoding
+            .newParser(server.getFhirContext())
+            .setPrettyPrint(prettyPrint)
+            .encodeResourceToString(statement)
+            .getBytes(StandardCharsets.UTF_8);
+        renderings.put(
+          variant(encoding, prettyPrint),
+          new Rendering(body, "\"" + DigestUtils.sha256Hex(body) + "\""));
+      }
+    }
+    return renderings;
+  }
+
+  private static String variant(EncodingEnum encoding, boolean prettyPrint) {
+    return encoding.name() + (prettyPrint ? ":pretty" : "");
+  }
+
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+      String trimmed = candidate.trim();
+      if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Value
+  private static class Statements {
+
+    /** Search parameters per resource type, the maps held by the registry when these were built */
+    Map<String, Map<String, RuntimeSearchParam>> searchParams;
+
+    /** Encodings of the statement per server base */
+    Cache<String, Map<String, Rendering>> serverBases;
+
+    boolean isStale(ISearchParamRegistry searchParamRegistry) {
+      for (Map.Entry<String, Map<String, RuntimeSearchParam>> entry : searchParams.entrySet()) {
+        if (searchParamRegistry.getActiveSearchParams(entry.getKey()) != entry.getValue()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  @Value
+  private static class Rendering {
+
+    byte[] body;
+
+    String etag;
+  }
+}
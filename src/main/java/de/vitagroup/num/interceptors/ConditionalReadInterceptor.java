@@ -0,0 +1,112 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.param.ParameterUtil;
+import ca.uhn.fhir.rest.server.ETagSupportEnum;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.auth.PolicyEnum;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.DateUtils;
+import de.vitagroup.num.configuration.ResourceVersionMap;
+import java.util.Date;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+
+/**
+ * Answers conditional reads of unchanged resources with 304 from the {@link ResourceVersionMap},
+ * before the resource is loaded. The conditions are the ones HAPI checks after loading it: an
+ * {@code If-None-Match} naming the current version or, without one, an {@code If-Modified-Since}
+ * not before the last update.
+ *
+ * <p>HAPI authorizes a read on the loaded resource, which a 304 from here never reaches. The rules
+ * are therefore applied to a resource carrying nothing but the id, and only for the types whose
+ * read rules depend on the id alone. Consents are left out: whether a patient may read one depends
+ * on the patient it references, which is only known once it is loaded. A request the rules do not
+ * allow on the id alone takes the normal read.
+ */
+@Interceptor
+@RequiredArgsConstructor
+public class ConditionalReadInterceptor {
+
+  private static final String NOT_MODIFIED_MESSAGE = "Not Modified";
+
+  private static final Set<String> ID_AUTHORIZED_TYPES = Set.of("Patient", "Organization");
+
+  private final ResourceVersionMap resourceVersionMap;
+
+  private final AuthorizationInterceptor authorizationInterceptor;
+
+  @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+  public void incomingRequest(
+    ServletRequestDetails theRequestDetails, RestOperationTypeEnum theOperation) {
+    IIdType id = theRequestDetails.getId();
+    String resourceName = theRequestDetails.getResourceName();
+    if (theOperation != RestOperationTypeEnum.READ
+      || id == null
+      || !id.hasIdPart()
+      || !ID_AUTHORIZED_TYPES.contains(resourceName)) {
+      return;
+    }
+
+    String ifNoneMatch = theRequestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH);
+    String ifModifiedSince = theRequestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE);
+    if (StringUtils.isBlank(ifNoneMatch) && StringUtils.isBlank(ifModifiedSince)) {
+      return;
+    }
+
+    ResourceVersionMap.Entry entry = resourceVersionMap.get(resourceName, id.getIdPart());
+    if (entry == null || entry.isDeleted()) {
+      return;
+    }
+
+    String version = Long.toString(entry.getVersion());
+    if (notModified(theRequestDetails, ifNoneMatch, ifModifiedSince, version, entry)
+      && allowed(theRequestDetails, resourceName, id)) {
+      theRequestDetails
+        .getServletResponse()
+        .setHeader(Constants.HEADER_ETAG, "W/\"" + version + "\"");
+      throw new NotModifiedException(NOT_MODIFIED_MESSAGE);
+    }
+  }
+
+  private boolean allowed(
+    ServletRequestDetails theRequestDetails, String resourceName, IIdType id) {
+    IBaseResource resource =
+      theRequestDetails.getFhirContext().getResourceDefinition(resourceName).newInstance();
+    resource.setId(id.withResourceType(resourceName).toUnqualifiedVersionless());
+
+    AuthorizationInterceptor.Verdict verdict =
+      authorizationInterceptor.applyRulesAndReturnDecision(
+        RestOperationTypeEnum.READ,
+        theRequestDetails,
+        null,
+        null,
+        resource,
+        Pointcut.STORAGE_PRESHOW_RESOURCES);
+    return verdict != null && verdict.getDecision() == PolicyEnum.ALLOW;
+  }
+
+  private static boolean notModified(
+    ServletRequestDetails theRequestDetails,
+    String ifNoneMatch,
+    String ifModifiedSince,
+    String version,
+    ResourceVersionMap.Entry entry) {
+    if (StringUtils.isNotBlank(ifNoneMatch)) {
+      // RFC 7232: If-Modified-Since is ignored when the request carries If-None-Match
+      return theRequestDetails.getServer().getETagSupport() == ETagSupportEnum.ENABLED
+        && version.equals(ParameterUtil.parseETagValue(ifNoneMatch));
+    }
+
+    Date ifModifiedSinceDate = DateUtils.parseDate(ifModifiedSince);
+    return ifModifiedSinceDate != null && entry.getLastUpdated() <= ifModifiedSinceDate.getTime();
+  }
+}
@@ -0,0 +1,71 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.function.Supplier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times the work each interceptor stage adds to a request, tagged by resource type and operation,
+ * so the stages can be compared with each other and with the total servlet time.
+ */
+@Component
+@RequiredArgsConstructor
+public class InterceptorMetrics {
+
+  public static final String AUTHORIZATION = "authorization";
+
+  public static final String CONSENT = "consent";
+
+  public static final String AUDIT = "audit";
+
+  private static final String TIMER_NAME = "fhir.interceptor";
+
+  private static final String NONE = "none";
+
+  private final MeterRegistry meterRegistry;
+
+  public <T> T record(String stage, RequestDetails requestDetails, Supplier<T> work) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    boolean success = false;
+    try {
+      T result = work.get();
+      success = true;
+      return result;
+    } finally {
+      sample.stop(timer(stage, requestDetails, success));
+    }
+  }
+
+  public void record(String stage, RequestDetails requestDetails, Runnable work) {
+    record(
+      stage,
+      requestDetails,
+      () -> {
+        work.run();
+        return null;
+      });
+  }
+
+  private Timer timer(String stage, RequestDetails requestDetails, boolean success) {
+    String resource = NONE;
+    String operation = NONE;
+    if (requestDetails != null) {
+      if (requestDetails.getResourceName() != null) {
+        resource = requestDetails.getResourceName();
+      }
+      if (requestDetails.getRestOperationType() != null) {
+        operation = requestDetails.getRestOperationType().getCode();
+      }
+    }
+
+    return meterRegistry.timer(
+      TIMER_NAME,
+      "stage", stage,
+      "resource", resource,
+      "operation", operation,
+      "outcome", success ? "success" : "error");
+  }
+}
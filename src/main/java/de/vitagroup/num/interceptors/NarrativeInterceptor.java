@@ -0,0 +1,69 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.narrative.INarrativeGenerator;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.DomainResource;
+
+/**
+ * Renders narratives for {@code hapi.fhir.narrative_mode: ON_DEMAND}. Only requests asking for the
+ * narrative with {@code _summary=text} or {@code _elements=text} get one, resources that already
+ * carry a stored narrative are returned as they are.
+ */
+@Interceptor
+@RequiredArgsConstructor
+public class NarrativeInterceptor {
+
+  private static final String TEXT_ELEMENT = "text";
+
+  private final INarrativeGenerator narrativeGenerator;
+
+  @Hook(Pointcut.STORAGE_PRESHOW_RESOURCES)
+  public void resourcesShown(IPreResourceShowDetails showDetails, RequestDetails requestDetails) {
+    if (!narrativeRequested(requestDetails)) {
+      return;
+    }
+
+    for (IBaseResource resource : showDetails) {
+      if (resource instanceof DomainResource && ((DomainResource) resource).getText().isEmpty()) {
+        narrativeGenerator.populateResourceNarrative(requestDetails.getFhirContext(), resource);
+      }
+    }
+  }
+
+  private static boolean narrativeRequested(RequestDetails requestDetails) {
+    if (requestDetails == null) {
+      return false;
+    }
+
+    String[] summary = requestDetails.getParameters().get(Constants.PARAM_SUMMARY);
+    if (summary != null) {
+      for (String value : summary) {
+        if (SummaryEnum.TEXT.getCode().equalsIgnoreCase(StringUtils.trim(value))) {
+          return true;
+        }
+      }
+    }
+
+    String[] elements = requestDetails.getParameters().get(Constants.PARAM_ELEMENTS);
+    if (elements != null) {
+      for (String value : elements) {
+        for (String element : StringUtils.split(value, ',')) {
+          // both "text" and "Patient.text" select the narrative
+          if (TEXT_ELEMENT.equals(StringUtils.substringAfterLast("." + element.trim(), "."))) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,58 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.vitagroup.num.configuration.ReadReplicaRoutingDataSource;
+import de.vitagroup.num.providers.KeysetSearchProvider;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Routes reads to the read replica. Only plain reads and keyset pages qualify: searches and paging
+ * store their results in the search cache and stay on the primary, like every write. After a
+ * write the reads of the same user stay on the primary for {@code read-replica.sticky-seconds}, so
+ * a user does not miss their own change because the replica lags behind.
+ *
+ * <p>The recent writers are held per node. With several nodes the load balancer has to send the
+ * requests of a user to the same node for the stickiness to hold.
+ */
+@Interceptor
+public class ReadReplicaInterceptor {
+
+  private static final Set<RestOperationTypeEnum> REPLICA_OPERATIONS =
+    EnumSet.of(RestOperationTypeEnum.READ, RestOperationTypeEnum.VREAD);
+
+  private final Cache<String, Boolean> recentWriters;
+
+  public ReadReplicaInterceptor(Duration stickyTime, long maximumUsers) {
+    recentWriters =
+      Caffeine.newBuilder().maximumSize(maximumUsers).expireAfterWrite(stickyTime).build();
+  }
+
+  @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+  public void route(RequestDetails theRequestDetails, RestOperationTypeEnum theOperation) {
+    String userName = RequestPrincipal.of(theRequestDetails).getUserName();
+    boolean replicaOperation =
+      REPLICA_OPERATIONS.contains(theOperation)
+        || KeysetSearchProvider.OPERATION_NAME.equals(theRequestDetails.getOperation());
+    ReadReplicaRoutingDataSource.useReplica(
+      replicaOperation && (userName == null || recentWriters.getIfPresent(userName) == null));
+  }
+
+  @Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+  public void completed(RequestDetails theRequestDetails) {
+    ReadReplicaRoutingDataSource.useReplica(false);
+
+    String userName = RequestPrincipal.of(theRequestDetails).getUserName();
+    if (userName != null && theRequestDetails.getRequestType() != RequestTypeEnum.GET) {
+      recentWriters.put(userName, Boolean.TRUE);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package de.vitagroup.num.interceptors;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * Claims of the calling user, read from the token once per request and kept in the request user
+ * data, so the interceptors don't have to go back to the security context on every hook.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class RequestPrincipal {
+
+  private static final String USER_DATA_KEY = RequestPrincipal.class.getName();
+
+  private static final String REALM_ACCESS = "realm_access";
+  private static final String ROLES_CLAIM = "roles";
+  private static final String ADMIN_ROLE = "admin";
+  private static final String PATIENT_ID = "patient_id";
+  private static final String SOF_PATIENT_ID = "patient";
+
+  private static final String PATIENT_REFERENCE_PREFIX = Patient.class.getSimpleName() + "/";
+
+  /** Request without a token */
+  private static final RequestPrincipal UNAUTHENTICATED =
+    new RequestPrincipal(false, null, null, null, false, null);
+
+  boolean authenticated;
+
+  String userName;
+
+  String patientId;
+
+  String smartOnFhirPatientId;
+
+  boolean admin;
+
+  /** Reference to the patient owning the token, e.g. Patient/123, null if there is none */
+  String patientReference;
+
+  public static RequestPrincipal of(RequestDetails requestDetails) {
+    if (requestDetails == null) {
+      return fromSecurityContext();
+    }
+    return (RequestPrincipal)
+      requestDetails
+        .getUserData()
+        .computeIfAbsent(USER_DATA_KEY, key -> fromSecurityContext());
+  }
+
+  public boolean hasPatientId() {
+    return StringUtils.isNotEmpty(patientId);
+  }
+
+  public boolean hasSmartOnFhirPatientId() {
+    return StringUtils.isNotEmpty(smartOnFhirPatientId);
+  }
+
+  private static RequestPrincipal fromSecurityContext() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (!(authentication instanceof JwtAuthenticationToken)) {
+      return UNAUTHENTICATED;
+    }
+
+    Jwt jwt = ((JwtAuthenticationToken) authentication).getToken();
+    if (jwt == null) {
+      return UNAUTHENTICATED;
+    }
+
+    String patientId = jwt.getClaim(PATIENT_ID);
+    return new RequestPrincipal(
+      true,
+      authentication.getName(),
+      patientId,
+      jwt.getClaim(SOF_PATIENT_ID),
+      hasAdminRole(jwt),
+      StringUtils.isEmpty(patientId) ? null : PATIENT_REFERENCE_PREFIX + patientId);
+  }
+
+  private static boolean hasAdminRole(Jwt jwt) {
+    JSONObject realmAccess = jwt.getClaim(REALM_ACCESS);
+    if (realmAccess != null) {
+      Object roles = realmAccess.get(ROLES_CLAIM);
+
+      if (roles instanceof JSONArray) {
+        return ((JSONArray) roles).contains(ADMIN_ROLE);
+      }
+    }
+    return false;
+  }
+}
@@ -1,69 +1,133 @@
 package de.vitagroup.num.interceptors;
 
 import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
 import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.auth.IAuthRule;
 import ca.uhn.fhir.rest.server.interceptor.auth.RuleBuilder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.vitagroup.num.providers.BulkExportProvider;
+import de.vitagroup.num.providers.KeysetSearchProvider;
+import de.vitagroup.num.providers.MassReindexProvider;
+import de.vitagroup.num.providers.PatientImportProvider;
+import de.vitagroup.num.providers.PatientLookupProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import net.minidev.json.JSONArray;
-import net.minidev.json.JSONObject;
-import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
+import lombok.Value;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Consent;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Patient;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 
 @Interceptor
 public class ResourceAuthorizationInterceptor extends AuthorizationInterceptor {
 
-  private static final String REALM_ACCESS = "realm_access";
-  private static final String ROLES_CLAIM = "roles";
-  private static final String ADMIN_ROLE = "admin";
-  private static final String PATIENT_ID = "patient_id";
-  private static final String SOF_PATIENT_ID = "patient";
+  private static final String RULE_CACHE_NAME = "authorizationRules";
+
+  // rule lists only depend on the token type and the patient id, so they are built once and
+  // shared between requests; HAPI never modifies the returned rules
+  private static final List<IAuthRule> METADATA_RULES =
+    Collections.unmodifiableList(new RuleBuilder().allowAll("SOF_allow_all").build());
+
+  private static final List<IAuthRule> ADMIN_RULES = buildAdminRules();
+
+  private final Cache<RuleSetKey, List<IAuthRule>> patientRuleCache;
+
+  private final InterceptorMetrics interceptorMetrics;
+
+  public ResourceAuthorizationInterceptor(
+    int ruleCacheSize, MeterRegistry meterRegistry, InterceptorMetrics interceptorMetrics) {
+    this.interceptorMetrics = interceptorMetrics;
+    patientRuleCache = Caffeine.newBuilder().maximumSize(ruleCacheSize).recordStats().build();
+    CaffeineCacheMetrics.monitor(meterRegistry, patientRuleCache, RULE_CACHE_NAME);
+  }
+
+  @Override
+  public Verdict applyRulesAndReturnDecision(
+    RestOperationTypeEnum theOperation,
+    RequestDetails theRequestDetails,
+    IBaseResource theInputResource,
+    IIdType theInputResourceId,
+    IBaseResource theOutputResource,
+    Pointcut thePointcut) {
+    return interceptorMetrics.record(
+      InterceptorMetrics.AUTHORIZATION,
+      theRequestDetails,
+      () ->
+        super.applyRulesAndReturnDecision(
+          theOperation,
+          theRequestDetails,
+          theInputResource,
+          theInputResourceId,
+          theOutputResource,
+          thePointcut));
+  }
 
   @Override
   public List<IAuthRule> buildRuleList(RequestDetails theRequestDetails) {
     // allow unconditional access to metadata requests
     if (theRequestDetails.getRestOperationType() == RestOperationTypeEnum.METADATA) {
-      return new RuleBuilder().allowAll("SOF_allow_all").build();
+      return METADATA_RULES;
     }
 
-    // returning this empty will block all requests
-    List<IAuthRule> rules = new ArrayList<>();
+    RequestPrincipal principal = RequestPrincipal.of(theRequestDetails);
 
-    Jwt jwt =
-      ((JwtAuthenticationToken) SecurityContextHolder.getContext().getAuthentication())
-        .getToken();
-
-    if (jwt != null) {
-      String tokenPatientId = jwt.getClaim(PATIENT_ID);
-      String smartOnFhirPatientId = jwt.getClaim(SOF_PATIENT_ID);
-
-      // sof is a mutually exclusive case with its own logic
-      if (StringUtils.isNotEmpty(smartOnFhirPatientId)) {
-        addSmartOFPatientRules(smartOnFhirPatientId, rules);
-      } else if (StringUtils.isNotEmpty(tokenPatientId)) {
-        addPatientRules(tokenPatientId, rules);
-      } else if (checkHasAdminRole(jwt)) {
-        addOrganizationRules(rules);
-        addKeycloakOperationsRules(rules);
-      } else {
-        throw new AuthenticationException("Missing or invalid Authorization header value");
-      }
-      rules.addAll(new RuleBuilder().denyAll("rule_deny_resource").build());
+    if (!principal.isAuthenticated()) {
+      // returning this empty will block all requests
+      return Collections.emptyList();
     }
 
-    return rules;
+    // sof is a mutually exclusive case with its own logic
+    if (principal.hasSmartOnFhirPatientId()) {
+      return patientRuleCache.get(
+        new RuleSetKey(TokenType.SMART_ON_FHIR, principal.getSmartOnFhirPatientId()),
+        key -> buildSmartOFPatientRules(key.getPatientId()));
+    } else if (principal.hasPatientId()) {
+      return patientRuleCache.get(
+        new RuleSetKey(TokenType.PATIENT, principal.getPatientId()),
+        key -> buildPatientRules(key.getPatientId()));
+    } else if (principal.isAdmin()) {
+      return ADMIN_RULES;
+    } else {
+      throw new AuthenticationException("Missing or invalid Authorization header value");
+    }
+  }
+
+  private static List<IAuthRule> buildAdminRules() {
+    List<IAuthRule> rules = new ArrayList<>();
+    addOrganizationRules(rules);
+    addKeycloakOperationsRules(rules);
+    addBulkOperationsRules(rules);
+    rules.addAll(
+      buildPatientOperationRule(
+        "rule_keyset_patient_resources", KeysetSearchProvider.OPERATION_NAME));
+    return withDenyAll(rules);
+  }
+
+  private static List<IAuthRule> buildSmartOFPatientRules(String smartOnFhirPatientId) {
+    List<IAuthRule> rules = new ArrayList<>();
+    addSmartOFPatientRules(smartOnFhirPatientId, rules);
+    return withDenyAll(rules);
+  }
+
+  private static List<IAuthRule> buildPatientRules(String tokenPatientId) {
+    List<IAuthRule> rules = new ArrayList<>();
+    addPatientRules(tokenPatientId, rules);
+    return withDenyAll(rules);
+  }
+
+  private static List<IAuthRule> withDenyAll(List<IAuthRule> rules) {
+    rules.addAll(new RuleBuilder().denyAll("rule_deny_resource").build());
+    return Collections.unmodifiableList(rules);
   }
 
   /*
@@ -72,7 +136,7 @@ public class ResourceAuthorizationInterceptor extends AuthorizationInterceptor {
   such as creating a Patient resource during registration, or finding the
   Patient resource id of a user during login
    */
-  private void addKeycloakOperationsRules(List<IAuthRule> pRules) {
+  private static void addKeycloakOperationsRules(List<IAuthRule> pRules) {
     /*TODO: If you use HAPI FHIR client in keycloak, it'll make a call to metadata endpoint.
      * the problem is, you cannot create a rule for the MetadataResource because
      * that resource does not have the ResourceDef annotation that the rule processing
@@ -81,22 +145,47 @@ public class ResourceAuthorizationInterceptor extends AuthorizationInterceptor {
      * but this is something to look into, because any other client can make that call.*/
     pRules.addAll(buildCreateRule("rule_create_patient_resource", Patient.class));
     pRules.addAll(buildReadRule("rule_read_patient_resource", Patient.class));
+    pRules.addAll(
+      buildPatientOperationRule(
+        "rule_lookup_patient_resource", PatientLookupProvider.OPERATION_NAME));
   }
 
-  private void addOrganizationRules(List<IAuthRule> rules) {
+  private static void addBulkOperationsRules(List<IAuthRule> rules) {
+    rules.addAll(
+      buildPatientOperationRule(
+        "rule_import_patient_resources", PatientImportProvider.IMPORT_OPERATION_NAME));
+    rules.addAll(
+      buildPatientOperationRule(
+        "rule_import_status", PatientImportProvider.STATUS_OPERATION_NAME));
+    rules.addAll(
+      buildServerOperationRule("rule_export", BulkExportProvider.EXPORT_OPERATION_NAME));
+    rules.addAll(
+      buildServerOperationRule("rule_export_status", BulkExportProvider.STATUS_OPERATION_NAME));
+    rules.addAll(
+      buildServerOperationRule(
+        "rule_export_download", BulkExportProvider.DOWNLOAD_OPERATION_NAME));
+    rules.addAll(
+      buildServerOperationRule(
+        "rule_mass_reindex", MassReindexProvider.REINDEX_OPERATION_NAME));
+    rules.addAll(
+      buildServerOperationRule(
+        "rule_mass_reindex_status", MassReindexProvider.STATUS_OPERATION_NAME));
+  }
+
+  private static void addOrganizationRules(List<IAuthRule> rules) {
     rules.addAll(buildCreateRule("rule_create_organization_resource", Organization.class));
     rules.addAll(buildReadRule("rule_read_organization_resource", Organization.class));
     rules.addAll(buildWriteRule("rule_update_organization_resource", Organization.class));
   }
 
-  private void addSmartOFPatientRules(String pSmartOnFhirPatientId, List<IAuthRule> rules) {
+  private static void addSmartOFPatientRules(String pSmartOnFhirPatientId, List<IAuthRule> rules) {
     // no rule for create -> should be done by keycloak registration at the moment
     IdType sofId = new IdType(Patient.class.getSimpleName(), pSmartOnFhirPatientId);
     rules.addAll(buildReadRule("rule_read_own_sof_patient_resource", Patient.class, sofId));
     rules.addAll(buildWriteRule("rule_update_own_sof_patient_resource", Patient.class, sofId));
   }
 
-  private void addPatientRules(String tokenPatientId, List<IAuthRule> rules) {
+  private static void addPatientRules(String tokenPatientId, List<IAuthRule> rules) {
     IdType patientId = new IdType(Patient.class.getSimpleName(), tokenPatientId);
 
     rules.addAll(buildCreateRule("rule_create_patient_resource", Patient.class));
@@ -107,17 +196,45 @@ public class ResourceAuthorizationInterceptor extends AuthorizationInterceptor {
     rules.addAll(buildReadRule("rule_read_consent_resource", Consent.class));
     rules.addAll(buildWriteRule("rule_update_consent_resource", Consent.class));
     rules.addAll(buildDeleteRule("rule_delete_consent_resource", Consent.class));
+    rules.addAll(
+      buildTypeOperationRule(
+        "rule_keyset_consent_resources", KeysetSearchProvider.OPERATION_NAME, Consent.class));
+  }
+
+  private static List<IAuthRule> buildPatientOperationRule(String name, String operation) {
+    return buildTypeOperationRule(name, operation, Patient.class);
+  }
+
+  private static List<IAuthRule> buildTypeOperationRule(
+    String name, String operation, Class<? extends IBaseResource> resource) {
+    return new RuleBuilder()
+      .allow(name)
+      .operation()
+      .named(operation)
+      .onType(resource)
+      .andAllowAllResponses()
+      .build();
+  }
+
+  private static List<IAuthRule> buildServerOperationRule(String name, String operation) {
+    return new RuleBuilder()
+      .allow(name)
+      .operation()
+      .named(operation)
+      .onServer()
+      .andAllowAllResponses()
+      .build();
   }
 
-  private List<IAuthRule> buildCreateRule(String name, Class<? extends IBaseResource> resource) {
+  private static List<IAuthRule> buildCreateRule(String name, Class<? extends IBaseResource> resource) {
     return new RuleBuilder().allow(name).create().resourcesOfType(resource).withAnyId().build();
   }
 
-  private List<IAuthRule> buildReadRule(String name, Class<? extends IBaseResource> resource) {
+  private static List<IAuthRule> buildReadRule(String name, Class<? extends IBaseResource> resource) {
     return new RuleBuilder().allow(name).read().resourcesOfType(resource).withAnyId().build();
   }
 
-  private List<IAuthRule> buildReadRule(
+  private static List<IAuthRule> buildReadRule(
     String name, Class<? extends IBaseResource> resource, IdType id) {
     return new RuleBuilder()
       .allow(name)
@@ -127,15 +244,15 @@ public class ResourceAuthorizationInterceptor extends AuthorizationInterceptor {
       .build();
   }
 
-  private List<IAuthRule> buildWriteRule(String name, Class<? extends IBaseResource> resource) {
+  private static List<IAuthRule> buildWriteRule(String name, Class<? extends IBaseResource> resource) {
     return new RuleBuilder().allow(name).write().resourcesOfType(resource).withAnyId().build();
   }
 
-  private List<IAuthRule> buildDeleteRule(String name, Class<? extends IBaseResource> resource) {
+  private static List<IAuthRule> buildDeleteRule(String name, Class<? extends IBaseResource> resource) {
     return new RuleBuilder().allow(name).delete().resourcesOfType(resource).withAnyId().build();
   }
 
-  private List<IAuthRule> buildWriteRule(
+  private static List<IAuthRule> buildWriteRule(
     String name, Class<? extends IBaseResource> resource, IdType id) {
     return new RuleBuilder()
       .allow(name)
@@ -145,15 +262,16 @@ public class ResourceAuthorizationInterceptor extends AuthorizationInterceptor {
       .build();
   }
 
-  private boolean checkHasAdminRole(Jwt jwt) {
-    JSONObject realmAccess = jwt.getClaim(REALM_ACCESS);
-    if (realmAccess != null) {
-      final JSONArray roles = (JSONArray) realmAccess.get(ROLES_CLAIM);
+  private enum TokenType {
+    PATIENT,
+    SMART_ON_FHIR
+  }
 
-      if (CollectionUtils.isNotEmpty(roles)) {
-        return roles.stream().anyMatch(role -> role.equals(ADMIN_ROLE));
-      }
-    }
-    return false;
+  @Value
+  private static class RuleSetKey {
+
+    TokenType tokenType;
+
+    String patientId;
   }
 }
@@ -7,22 +7,18 @@ import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
 import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
-import de.vitagroup.num.abac.AbacFeign;
-import de.vitagroup.num.abac.ConsentEvent;
+import de.vitagroup.num.abac.ConsentOutbox;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Consent;
-import org.hl7.fhir.r4.model.Patient;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 
 @Interceptor
 @RequiredArgsConstructor
 public class ResourceInterceptor {
 
-  private final AbacFeign abacFeign;
+  private final ConsentOutbox consentOutbox;
+
+  private final InterceptorMetrics interceptorMetrics;
 
   @Hook(Pointcut.STORAGE_PRESHOW_RESOURCES)
   public void resourceRead(
@@ -30,56 +26,58 @@ public class ResourceInterceptor {
     RequestDetails requestDetails,
     ServletRequestDetails servletRequestDetails) {
 
-    showDetails.forEach(this::checkPatientReference);
+    interceptorMetrics.record(
+      InterceptorMetrics.CONSENT,
+      requestDetails,
+      () -> showDetails.forEach(resource -> checkPatientReference(requestDetails, resource)));
   }
 
-  private void checkPatientReference(IBaseResource resource) {
+  private void checkPatientReference(RequestDetails requestDetails, IBaseResource resource) {
     if (resource instanceof Consent) {
-      checkPatientReference((Consent) resource);
+      checkPatientReference(requestDetails, (Consent) resource);
     }
   }
 
   @Hook(Pointcut.STORAGE_PRESTORAGE_RESOURCE_CREATED)
   public void resourceCreated(RequestDetails theRequest, IBaseResource theResource) {
     if (theResource instanceof Consent) {
-
-      Consent consent = (Consent) theResource;
-      checkPatientReference(consent);
-      abacFeign.addConsent(
-        ConsentEvent.builder().consent(consent).insert(true).build());
+      interceptorMetrics.record(
+        InterceptorMetrics.CONSENT, theRequest, () -> storeConsent(theRequest, theResource, true));
     }
   }
 
   @Hook(Pointcut.STORAGE_PRESTORAGE_RESOURCE_UPDATED)
-  public void resourceUpdated(RequestDetails theRequest, IBaseResource theResource) {
-    if (theResource instanceof Consent) {
-      Consent consent = (Consent) theResource;
-      checkPatientReference(consent);
-      abacFeign.addConsent(
-        ConsentEvent.builder().consent(consent).insert(true).build());
+  public void resourceUpdated(
+    RequestDetails theRequest, IBaseResource theOldResource, IBaseResource theNewResource) {
+    if (theNewResource instanceof Consent) {
+      interceptorMetrics.record(
+        InterceptorMetrics.CONSENT,
+        theRequest,
+        () -> storeConsent(theRequest, theNewResource, true));
     }
   }
 
   @Hook(Pointcut.STORAGE_PRESTORAGE_RESOURCE_DELETED)
   public void resourceDeleted(RequestDetails theRequest, IBaseResource theResource) {
     if (theResource instanceof Consent) {
-      Consent consent = (Consent) theResource;
-      checkPatientReference(consent);
-      abacFeign.addConsent(
-        ConsentEvent.builder().consent(consent).insert(false).build());
+      interceptorMetrics.record(
+        InterceptorMetrics.CONSENT,
+        theRequest,
+        () -> storeConsent(theRequest, theResource, false));
     }
   }
 
-  private void checkPatientReference(Consent resource) {
-    Jwt jwt =
-      ((JwtAuthenticationToken) SecurityContextHolder.getContext().getAuthentication())
-        .getToken();
+  private void storeConsent(RequestDetails theRequest, IBaseResource theResource, boolean insert) {
+    Consent consent = (Consent) theResource;
+    checkPatientReference(theRequest, consent);
+    consentOutbox.enqueue(consent, insert);
+  }
 
-    String tokenPatientId = jwt.getClaim("patient_id");
-    String reference = resource.getPatient().getReference();
+  private void checkPatientReference(RequestDetails requestDetails, Consent resource) {
+    String patientReference = RequestPrincipal.of(requestDetails).getPatientReference();
 
-    if (StringUtils.isEmpty(tokenPatientId)
-      || !(Patient.class.getSimpleName() + "/" + tokenPatientId).equals(reference)) {
+    if (patientReference == null
+      || !patientReference.equals(resource.getPatient().getReference())) {
       throw new ForbiddenOperationException(
         "Reading/modifying of not owned consent is not allowed.");
     }
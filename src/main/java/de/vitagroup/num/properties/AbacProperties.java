@@ -0,0 +1,47 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "abac")
+public class AbacProperties {
+
+  private String url;
+
+  private Outbox outbox = new Outbox();
+
+  @Data
+  public static class Outbox {
+
+    /** Maximum number of consent events sent to ABAC in one batch call */
+    private int batchSize = 100;
+
+    /** Delay between two dispatcher runs */
+    private long pollIntervalMillis = 1000;
+
+    /**
+     * Delay before the first retry of a rejected event, and before the next attempt once ABAC was
+     * not reachable, doubled on every further failure
+     */
+    private long initialBackoffMillis = 1000;
+
+    private long maxBackoffMillis = 300000;
+
+    /**
+     * Rejections after which an event is given up and kept as failed; deliveries failing because
+     * ABAC is not reachable are retried without limit
+     */
+    private int maxAttempts = 20;
+
+    /**
+     * Time a dispatcher may take to send a claimed batch before other dispatchers claim it again,
+     * longer than the ABAC client timeouts
+     */
+    private long claimTimeoutMillis = 120000;
+  }
+}
@@ -14,4 +14,35 @@ public class AuditProperties {
   private String host;
 
   private int port;
+
+  /** Maximum number of audit messages waiting for a sender thread */
+  private int queueCapacity = 10000;
+
+  private int senderThreads = 1;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.LOG;
+
+  /** How long pending audit messages may still be sent when the application stops */
+  private long shutdownTimeoutMillis = 10000;
+
+  /** Search and transaction audits listing more patients are split into several messages */
+  private int maxParticipantsPerMessage = 500;
+
+  private Marshaller marshaller = Marshaller.STREAMING;
+
+  public enum OverflowPolicy {
+    /** Wait on the request thread until the queue has room again */
+    BLOCK,
+    /** Discard the message and count it */
+    DROP,
+    /** Discard the message, count it and write it to the local application log */
+    LOG
+  }
+
+  public enum Marshaller {
+    /** DICOM 2017c marshalling of IPF, building a JDOM tree per message */
+    JDOM,
+    /** The same output written straight into one buffer, without a JDOM tree */
+    STREAMING
+  }
 }
@@ -0,0 +1,31 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "bulk.export")
+public class BulkExportProperties {
+
+  /** Directory the gzip NDJSON files are written to, one sub directory per job */
+  private String directory = "target/bulk-export";
+
+  /** Rows fetched from the database cursor at a time, also the session flush interval */
+  private int fetchSize = 500;
+
+  /** Age after which jobs and their files are removed */
+  private long retentionHours = 24;
+
+  /** Interval in which a node records that its queued and running jobs are alive */
+  private long heartbeatIntervalMillis = 30000;
+
+  /**
+   * Age of the last heartbeat after which a queued or running job is failed, well above the
+   * heartbeat interval plus the clock skew between the nodes
+   */
+  private long staleAfterMillis = 120000;
+}
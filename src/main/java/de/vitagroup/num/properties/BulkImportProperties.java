@@ -0,0 +1,19 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "bulk.import")
+public class BulkImportProperties {
+
+  /** Patients written per transaction, also the unit of resumption and of audit messages */
+  private int chunkSize = 500;
+
+  /** JDBC batch size used while a chunk is written */
+  private int jdbcBatchSize = 100;
+}
@@ -0,0 +1,34 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "bulk.reindex")
+public class BulkReindexProperties {
+
+  /** Threads of the fork-join pool the ranges are reindexed on */
+  private int parallelism = 2;
+
+  /** Number of resource ids per range, the unit of work and of the checkpoint */
+  private int rangeSize = 1000;
+
+  /** Upper bound of the reindex rate across all threads, 0 for no limit */
+  private double maxResourcesPerSecond = 500;
+
+  /** Interval of the throughput and ETA log lines */
+  private long reportIntervalSeconds = 30;
+
+  /** Interval in which a node records that its running jobs are alive */
+  private long heartbeatIntervalMillis = 30000;
+
+  /**
+   * Age of the last heartbeat after which a running job is failed, well above the heartbeat
+   * interval plus the clock skew between the nodes
+   */
+  private long staleAfterMillis = 120000;
+}
@@ -0,0 +1,31 @@
+package de.vitagroup.num.properties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "compression")
+public class CompressionProperties {
+
+  /** Compress FHIR responses with gzip or deflate if the client accepts it */
+  private boolean enabled = true;
+
+  /** Responses smaller than this are sent uncompressed */
+  private int minResponseSize = 2048;
+
+  private List<String> mimeTypes =
+    new ArrayList<>(
+      Arrays.asList(
+        "application/fhir+json",
+        "application/fhir+xml",
+        "application/json",
+        "application/xml",
+        "text/html"));
+}
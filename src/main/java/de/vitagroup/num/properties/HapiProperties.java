@@ -19,7 +19,7 @@ public class HapiProperties {
   private List<String> supportedResourceTypes = new ArrayList<>();
   private Integer default_page_size = 20;
   private Integer defer_indexing_for_codesystems_of_size = 100;
-  private Integer max_page_size = Integer.MAX_VALUE;
+  private Integer max_page_size = 500;
   private Boolean allow_contains_searches = true;
   private Boolean allow_external_references = true;
   private Boolean allow_override_default_search_params = true;
@@ -28,6 +28,27 @@ public class HapiProperties {
   private Long reuse_cached_search_results_millis = 60000L;
   private FhirVersionEnum fhir_version = FhirVersionEnum.R4;
   private List<String> supported_resource_types = new ArrayList<>();
+  private Integer authorization_rule_cache_size = 10000;
+  private Boolean patient_read_cache_enabled = false;
+  private Integer patient_read_cache_size = 10000;
+  private Long patient_read_cache_ttl_seconds = 300L;
+  private Boolean patient_identifier_index_enabled = true;
+  private Boolean default_pretty_print = false;
+  private NarrativeMode narrative_mode = NarrativeMode.ON_DEMAND;
+  private Integer narrative_cache_size = 10000;
+  private Boolean slim_mode = false;
+  private Long metadata_max_age_seconds = 300L;
+  private List<String> metadata_server_bases =
+    new ArrayList<>(List.of("http://localhost:8080/fhir"));
+  private Boolean version_map_enabled = false;
 
+  public enum NarrativeMode {
+    /** No narratives are rendered, stored narratives are still returned */
+    OFF,
+    /** Resources written without a narrative get one rendered and stored with them */
+    PERSIST,
+    /** Narratives are rendered for responses requesting _summary=text or _elements=text */
+    ON_DEMAND
+  }
 }
 
@@ -0,0 +1,25 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "jwks")
+public class JwksProperties {
+
+  /** Interval of the background refresh of the Keycloak key set */
+  private long refreshIntervalMillis = 300000;
+
+  /** Minimum time between two refreshes, tokens with unknown key ids wait for the next one */
+  private long minRefreshIntervalMillis = 10000;
+
+  private int connectTimeoutMillis = 2000;
+
+  private int readTimeoutMillis = 2000;
+
+  private int sizeLimitBytes = 51200;
+}
@@ -0,0 +1,30 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "read-replica")
+public class ReadReplicaProperties {
+
+  /** Route reads to the replica below, everything else keeps using spring.datasource */
+  private boolean enabled = false;
+
+  private String url;
+
+  private String username;
+
+  private String password;
+
+  private int maximumPoolSize = 10;
+
+  /** Time after a write during which the reads of the same user stay on the primary */
+  private long stickySeconds = 5;
+
+  /** Maximum number of users tracked as recent writers */
+  private long stickyUsers = 100000;
+}
@@ -0,0 +1,25 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "search.indexing")
+public class SearchIndexingProperties {
+
+  /** Index resources in the background instead of inside their write transaction */
+  private boolean async = false;
+
+  /** Maximum number of queued resources indexed in one transaction */
+  private int batchSize = 200;
+
+  /**
+   * Delay between two indexing runs. A committed resource is searchable after at most this
+   * delay plus the time needed to index the resources queued before it.
+   */
+  private long maxDelayMillis = 1000;
+}
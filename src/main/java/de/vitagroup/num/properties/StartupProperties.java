@@ -0,0 +1,16 @@
+package de.vitagroup.num.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "startup")
+public class StartupProperties {
+
+  /** Stop the application once it is ready, used by the AppCDS training run */
+  private boolean exitAfterStart = false;
+}
@@ -0,0 +1,188 @@
+package de.vitagroup.num.providers;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import de.vitagroup.num.bulk.BulkExporter;
+import de.vitagroup.num.bulk.ExportJob;
+import de.vitagroup.num.bulk.ResourceExporter;
+import de.vitagroup.num.configuration.CompressionFilter;
+import de.vitagroup.num.interceptors.RequestPrincipal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.Consent;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.UriType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Server level bulk export. {@code $export} queues a job for the resource types in {@code _type}
+ * changed after {@code _since}, {@code $export-status?job=} reports its progress and, once it is
+ * completed, one output per resource type. The outputs are downloaded as NDJSON from {@code
+ * $export-download?job=&_type=}, gzip encoded if the client accepts gzip.
+ */
+@Component
+@RequiredArgsConstructor
+public class BulkExportProvider {
+
+  public static final String EXPORT_OPERATION_NAME = "$export";
+
+  public static final String STATUS_OPERATION_NAME = "$export-status";
+
+  public static final String DOWNLOAD_OPERATION_NAME = "$export-download";
+
+  private static final String JOB_PARAMETER = "job";
+
+  private static final List<String> EXPORTABLE_TYPES =
+    Arrays.asList(
+      Patient.class.getSimpleName(),
+      Consent.class.getSimpleName(),
+      Organization.class.getSimpleName());
+
+  private final BulkExporter bulkExporter;
+
+  private final ResourceExporter resourceExporter;
+
+  @Operation(name = EXPORT_OPERATION_NAME, idempotent = true)
+  public Parameters export(
+    @OperationParam(name = Constants.PARAM_TYPE, max = 1) StringType type,
+    @OperationParam(name = Constants.PARAM_SINCE, max = 1) InstantType since,
+    RequestDetails theRequestDetails) {
+    Set<String> resourceTypes = new LinkedHashSet<>();
+    if (type == null || StringUtils.isBlank(type.getValue())) {
+      resourceTypes.addAll(EXPORTABLE_TYPES);
+    } else {
+      for (String resourceType : StringUtils.split(type.getValue(), ',')) {
+        if (!EXPORTABLE_TYPES.contains(resourceType.trim())) {
+          throw new InvalidRequestException("Resource type " + resourceType + " can not be exported");
+        }
+        resourceTypes.add(resourceType.trim());
+      }
+    }
+
+    ExportJob job =
+      bulkExporter.submit(
+        resourceTypes,
+        since != null && since.getValue() != null ? since.getValue().toInstant() : null,
+        RequestPrincipal.of(theRequestDetails).getUserName());
+    return toParameters(job, theRequestDetails);
+  }
+
+  @Operation(name = STATUS_OPERATION_NAME, idempotent = true)
+  public Parameters exportStatus(
+    @OperationParam(name = JOB_PARAMETER, min = 1, max = 1) StringType job,
+    RequestDetails theRequestDetails) {
+    return toParameters(resourceExporter.find(job.getValue()), theRequestDetails);
+  }
+
+  @Operation(name = DOWNLOAD_OPERATION_NAME, idempotent = true, manualResponse = true)
+  public void exportDownload(
+    @OperationParam(name = JOB_PARAMETER, min = 1, max = 1) StringType job,
+    @OperationParam(name = Constants.PARAM_TYPE, min = 1, max = 1) StringType type,
+    HttpServletRequest theServletRequest,
+    HttpServletResponse theServletResponse)
+    throws IOException {
+    ExportJob exportJob = resourceExporter.find(job.getValue());
+    if (exportJob.getStatus() != ExportJob.Status.COMPLETED
+      || !BulkExporter.resourceTypes(exportJob).contains(type.getValue())) {
+      throw new ResourceNotFoundException(
+        "Export job " + job.getValue() + " has no completed output for " + type.getValue());
+    }
+
+    Path file = bulkExporter.file(exportJob.getId(), type.getValue());
+    if (!Files.isRegularFile(file)) {
+      throw new ResourceNotFoundException(
+        "The output of export job "
+          + job.getValue()
+          + " for "
+          + type.getValue()
+          + " is not available on this node, bulk.export.directory has to be shared by all nodes");
+    }
+
+    theServletResponse.setContentType(Constants.CT_FHIR_NDJSON);
+    theServletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (CompressionFilter.accepts(
+      CompressionFilter.acceptEncoding(theServletRequest), Constants.ENCODING_GZIP)) {
+      theServletResponse.setHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+      theServletResponse.setContentLengthLong(Files.size(file));
+      Files.copy(file, theServletResponse.getOutputStream());
+    } else {
+      // decompressed while it is sent, the length is only known at the end
+      try (InputStream ndjson = new GZIPInputStream(Files.newInputStream(file))) {
+        ndjson.transferTo(theServletResponse.getOutputStream());
+      }
+    }
+  }
+
+  private static Parameters toParameters(ExportJob job, RequestDetails theRequestDetails) {
+    Parameters parameters = new Parameters();
+    parameters.addParameter().setName(JOB_PARAMETER).setValue(new StringType(job.getId()));
+    parameters
+      .addParameter()
+      .setName("status")
+      .setValue(new StringType(job.getStatus().name()));
+    parameters
+      .addParameter()
+      .setName("transactionTime")
+      .setValue(new InstantType(Date.from(job.getTransactionTime())));
+    if (job.getSince() != null) {
+      parameters
+        .addParameter()
+        .setName(Constants.PARAM_SINCE)
+        .setValue(new InstantType(Date.from(job.getSince())));
+    }
+    if (job.getError() != null) {
+      parameters.addParameter().setName("error").setValue(new StringType(job.getError()));
+    }
+
+    if (job.getStatus() == ExportJob.Status.COMPLETED) {
+      parameters
+        .addParameter()
+        .setName("resourceCount")
+        .setValue(new IntegerType(Math.toIntExact(job.getResourceCount())));
+      for (String resourceType : BulkExporter.resourceTypes(job)) {
+        ParametersParameterComponent output = parameters.addParameter().setName("output");
+        output.addPart().setName("type").setValue(new StringType(resourceType));
+        output
+          .addPart()
+          .setName("url")
+          .setValue(
+            new UriType(
+              theRequestDetails.getFhirServerBase()
+                + "/"
+                + DOWNLOAD_OPERATION_NAME
+                + "?"
+                + JOB_PARAMETER
+                + "="
+                + job.getId()
+                + "&"
+                + Constants.PARAM_TYPE
+                + "="
+                + resourceType));
+      }
+    }
+    return parameters;
+  }
+}
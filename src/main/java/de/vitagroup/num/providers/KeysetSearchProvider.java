@@ -0,0 +1,216 @@
+package de.vitagroup.num.providers;
+
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.util.JpaInterceptorBroadcaster;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IPreResourceAccessDetails;
+import ca.uhn.fhir.rest.api.server.IPreResourceShowDetails;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.SimplePreResourceAccessDetails;
+import ca.uhn.fhir.rest.api.server.SimplePreResourceShowDetails;
+import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import de.vitagroup.num.interceptors.RequestPrincipal;
+import de.vitagroup.num.properties.HapiProperties;
+import de.vitagroup.num.search.KeysetCursor;
+import de.vitagroup.num.search.KeysetSearch;
+import de.vitagroup.num.search.KeysetSort;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
+import org.hl7.fhir.r4.model.Consent;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.StringType;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code Patient/$keyset} and {@code Consent/$keyset} page through all resources of the type in
+ * {@code _lastUpdated} or {@code _id} order. Instead of a search cache entry, every page links to
+ * the next one with an opaque {@code _cursor} holding the sort key of its last resource, so deep
+ * pages cost as much as the first one. {@code _count} is capped at {@code hapi.fhir.max_page_size}.
+ * Consents are limited to those of the patient owning the token. Search parameters are not
+ * supported and rejected, rather than ignored and answered with unfiltered pages.
+ */
+@Component
+@RequiredArgsConstructor
+public class KeysetSearchProvider {
+
+  public static final String OPERATION_NAME = "$keyset";
+
+  private static final String CURSOR_PARAMETER = "_cursor";
+
+  private static final String CONSENT_PATIENT_PATH = "Consent.patient";
+
+  private static final Set<String> SUPPORTED_PARAMETERS =
+    Set.of(
+      Constants.PARAM_SORT,
+      Constants.PARAM_COUNT,
+      CURSOR_PARAMETER,
+      Constants.PARAM_FORMAT,
+      Constants.PARAM_PRETTY,
+      Constants.PARAM_SUMMARY,
+      Constants.PARAM_ELEMENTS);
+
+  private final KeysetSearch keysetSearch;
+
+  private final HapiProperties hapiProperties;
+
+  private final IInterceptorService interceptorService;
+
+  @Operation(name = OPERATION_NAME, type = Patient.class, idempotent = true)
+  public Bundle patients(
+    @OperationParam(name = Constants.PARAM_SORT, max = 1) StringType sort,
+    @OperationParam(name = Constants.PARAM_COUNT, max = 1) IntegerType count,
+    @OperationParam(name = CURSOR_PARAMETER, max = 1) StringType cursor,
+    RequestDetails theRequestDetails) {
+    checkParameters(theRequestDetails);
+    return page(
+      Patient.class.getSimpleName(), sort, count, cursor, null, null, theRequestDetails);
+  }
+
+  @Operation(name = OPERATION_NAME, type = Consent.class, idempotent = true)
+  public Bundle consents(
+    @OperationParam(name = Constants.PARAM_SORT, max = 1) StringType sort,
+    @OperationParam(name = Constants.PARAM_COUNT, max = 1) IntegerType count,
+    @OperationParam(name = CURSOR_PARAMETER, max = 1) StringType cursor,
+    RequestDetails theRequestDetails) {
+    checkParameters(theRequestDetails);
+    String patientId = RequestPrincipal.of(theRequestDetails).getPatientId();
+    if (patientId == null) {
+      throw new ForbiddenOperationException("Consents can only be listed with a patient token");
+    }
+    Long patientResourceId = keysetSearch.findPatientResourceId(patientId);
+    if (patientResourceId == null) {
+      return newBundle();
+    }
+    return page(
+      Consent.class.getSimpleName(),
+      sort,
+      count,
+      cursor,
+      CONSENT_PATIENT_PATH,
+      patientResourceId,
+      theRequestDetails);
+  }
+
+  private Bundle page(
+    String resourceType,
+    StringType sortParameter,
+    IntegerType countParameter,
+    StringType cursorParameter,
+    String patientPath,
+    Long patientResourceId,
+    RequestDetails theRequestDetails) {
+    KeysetCursor after =
+      cursorParameter != null && cursorParameter.hasValue()
+        ? KeysetCursor.decode(cursorParameter.getValue())
+        : null;
+    KeysetSort sort =
+      after != null
+        ? after.getSort()
+        : KeysetSort.fromParameter(sortParameter != null ? sortParameter.getValue() : null);
+    int count =
+      countParameter != null && countParameter.getValue() != null
+        ? Math.max(1, Math.min(countParameter.getValue(), hapiProperties.getMax_page_size()))
+        : hapiProperties.getDefault_page_size();
+
+    // one more than requested tells whether there is a next page
+    List<KeysetSearch.Match> matches =
+      keysetSearch.page(resourceType, sort, after, patientPath, patientResourceId, count + 1);
+
+    Bundle bundle = newBundle();
+    String pageUrl =
+      theRequestDetails.getFhirServerBase() + "/" + resourceType + "/" + OPERATION_NAME;
+    bundle
+      .addLink()
+      .setRelation(Constants.LINK_SELF)
+      .setUrl(theRequestDetails.getCompleteUrl());
+    for (KeysetSearch.Match match : matches.subList(0, Math.min(count, matches.size()))) {
+      IBaseResource resource = show(match.getResource(), theRequestDetails);
+      if (resource != null) {
+        bundle
+          .addEntry()
+          .setFullUrl(
+            resource
+              .getIdElement()
+              .withServerBase(theRequestDetails.getFhirServerBase(), resourceType)
+              .toVersionless()
+              .getValue())
+          .setResource((Resource) resource)
+          .getSearch()
+          .setMode(SearchEntryMode.MATCH);
+      }
+    }
+    if (matches.size() > count) {
+      bundle
+        .addLink()
+        .setRelation(Constants.LINK_NEXT)
+        .setUrl(
+          pageUrl
+            + "?"
+            + Constants.PARAM_COUNT
+            + "="
+            + count
+            + "&"
+            + CURSOR_PARAMETER
+            + "="
+            + matches.get(count - 1).getCursor().encode());
+    }
+    return bundle;
+  }
+
+  private static void checkParameters(RequestDetails theRequestDetails) {
+    for (String name : theRequestDetails.getParameters().keySet()) {
+      if (!SUPPORTED_PARAMETERS.contains(name)) {
+        throw new InvalidRequestException(
+          OPERATION_NAME + " does not support search parameters, got " + name);
+      }
+    }
+  }
+
+  private static Bundle newBundle() {
+    Bundle bundle = new Bundle();
+    bundle.setType(BundleType.SEARCHSET);
+    return bundle;
+  }
+
+  /**
+   * Runs the pre-access and pre-show pointcuts a search runs for every resource, so consent
+   * checks and auditing treat the page like a search result. Returns null if the resource must
+   * not be returned.
+   */
+  private IBaseResource show(IBaseResource resource, RequestDetails theRequestDetails) {
+    SimplePreResourceAccessDetails accessDetails = new SimplePreResourceAccessDetails(resource);
+    HookParams params =
+      new HookParams()
+        .add(IPreResourceAccessDetails.class, accessDetails)
+        .add(RequestDetails.class, theRequestDetails)
+        .addIfMatchesType(ServletRequestDetails.class, theRequestDetails);
+    JpaInterceptorBroadcaster.doCallHooks(
+      interceptorService, theRequestDetails, Pointcut.STORAGE_PREACCESS_RESOURCES, params);
+    if (accessDetails.isDontReturnResourceAtIndex(0)) {
+      return null;
+    }
+
+    SimplePreResourceShowDetails showDetails = new SimplePreResourceShowDetails(resource);
+    params =
+      new HookParams()
+        .add(IPreResourceShowDetails.class, showDetails)
+        .add(RequestDetails.class, theRequestDetails)
+        .addIfMatchesType(ServletRequestDetails.class, theRequestDetails);
+    JpaInterceptorBroadcaster.doCallHooks(
+      interceptorService, theRequestDetails, Pointcut.STORAGE_PRESHOW_RESOURCES, params);
+    return showDetails.getResource(0);
+  }
+}
@@ -0,0 +1,123 @@
+package de.vitagroup.num.providers;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import de.vitagroup.num.bulk.MassReindexer;
+import de.vitagroup.num.bulk.ReindexJob;
+import de.vitagroup.num.bulk.ResourceReindexer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.Consent;
+import org.hl7.fhir.r4.model.DecimalType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Server level rebuild of the search parameter and fulltext indexes, e.g. after a search
+ * parameter change or a corrupted Lucene index. {@code $mass-reindex} starts a job for the
+ * resource types in {@code _type}, or resumes the failed job given in {@code job} with the ranges
+ * that were not completed. {@code $mass-reindex-status?job=} reports its progress, throughput and
+ * estimated remaining time.
+ */
+@Component
+@RequiredArgsConstructor
+public class MassReindexProvider {
+
+  public static final String REINDEX_OPERATION_NAME = "$mass-reindex";
+
+  public static final String STATUS_OPERATION_NAME = "$mass-reindex-status";
+
+  private static final String JOB_PARAMETER = "job";
+
+  private static final List<String> REINDEXABLE_TYPES =
+    Arrays.asList(
+      Patient.class.getSimpleName(),
+      Consent.class.getSimpleName(),
+      Organization.class.getSimpleName());
+
+  private final MassReindexer massReindexer;
+
+  private final ResourceReindexer resourceReindexer;
+
+  @Operation(name = REINDEX_OPERATION_NAME)
+  public Parameters reindex(
+    @OperationParam(name = Constants.PARAM_TYPE, max = 1) StringType type,
+    @OperationParam(name = JOB_PARAMETER, max = 1) StringType job) {
+    if (job != null && StringUtils.isNotBlank(job.getValue())) {
+      return toParameters(massReindexer.resume(job.getValue()));
+    }
+
+    Set<String> resourceTypes = new LinkedHashSet<>();
+    if (type == null || StringUtils.isBlank(type.getValue())) {
+      resourceTypes.addAll(REINDEXABLE_TYPES);
+    } else {
+      for (String resourceType : StringUtils.split(type.getValue(), ',')) {
+        if (!REINDEXABLE_TYPES.contains(resourceType.trim())) {
+          throw new InvalidRequestException(
+            "Resource type " + resourceType + " can not be reindexed");
+        }
+        resourceTypes.add(resourceType.trim());
+      }
+    }
+    return toParameters(massReindexer.submit(resourceTypes));
+  }
+
+  @Operation(name = STATUS_OPERATION_NAME, idempotent = true)
+  public Parameters reindexStatus(
+    @OperationParam(name = JOB_PARAMETER, min = 1, max = 1) StringType job) {
+    return toParameters(resourceReindexer.find(job.getValue()));
+  }
+
+  private Parameters toParameters(ReindexJob job) {
+    Parameters parameters = new Parameters();
+    parameters.addParameter().setName(JOB_PARAMETER).setValue(new StringType(job.getId()));
+    parameters
+      .addParameter()
+      .setName("status")
+      .setValue(new StringType(job.getStatus().name()));
+    parameters
+      .addParameter()
+      .setName("rangesTotal")
+      .setValue(new IntegerType(job.getRangesTotal()));
+    parameters
+      .addParameter()
+      .setName("rangesCompleted")
+      .setValue(new IntegerType(job.getRangesCompleted()));
+    parameters
+      .addParameter()
+      .setName("resourcesReindexed")
+      .setValue(new IntegerType(Math.toIntExact(job.getResourcesReindexed())));
+    if (job.getError() != null) {
+      parameters.addParameter().setName("error").setValue(new StringType(job.getError()));
+    }
+
+    massReindexer
+      .progress(job.getId())
+      .ifPresent(
+        progress -> {
+          parameters
+            .addParameter()
+            .setName("resourcesPerSecond")
+            .setValue(new DecimalType(Math.round(progress.resourcesPerSecond() * 10) / 10d));
+          Duration eta = progress.eta();
+          if (eta != null) {
+            parameters
+              .addParameter()
+              .setName("etaSeconds")
+              .setValue(new IntegerType(Math.toIntExact(eta.getSeconds())));
+          }
+        });
+    return parameters;
+  }
+}
@@ -0,0 +1,214 @@
+package de.vitagroup.num.providers;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import de.vitagroup.num.properties.HapiProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Patient ids by identifier system and value, held in memory for the {@code $lookup} operation.
+ * The index is loaded from the token index of the Patient {@code identifier} search parameter once
+ * the application is ready, and kept current by the create, update and delete commits. Until the
+ * load has finished {@link #find} returns null and lookups fall back to a search.
+ *
+ * <p>Only the commits of this node are seen. An identifier added through another node is missing
+ * until the next start, which is why lookups search the database when the index has no match. An
+ * identifier removed through another node still finds its old patient.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PatientIdentifierIndex {
+
+  private static final String LOAD_QUERY =
+    "SELECT t.mySystem, t.myValue, r.myId, f.myForcedId"
+      + " FROM ResourceIndexedSearchParamToken t JOIN t.myResource r LEFT JOIN r.myForcedId f"
+      + " WHERE t.myResourceType = 'Patient' AND t.myParamName = 'identifier'"
+      + " AND r.myDeleted IS NULL";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final IInterceptorService interceptorService;
+
+  private final HapiProperties hapiProperties;
+
+  private final MeterRegistry meterRegistry;
+
+  private final Map<IdentifierKey, Set<String>> patientsByIdentifier = new ConcurrentHashMap<>();
+
+  private final Map<String, Set<IdentifierKey>> identifiersByPatient = new HashMap<>();
+
+  /** Patients written while the index was loading, the loaded state of these is outdated */
+  private final Set<String> writtenWhileLoading = new HashSet<>();
+
+  private volatile boolean loaded;
+
+  @PostConstruct
+  public void registerHooks() {
+    if (hapiProperties.getPatient_identifier_index_enabled()) {
+      interceptorService.registerInterceptor(this);
+      Gauge.builder("fhir.patient.identifier.index.size", patientsByIdentifier, Map::size)
+        .register(meterRegistry);
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional(readOnly = true)
+  public void load() {
+    if (!hapiProperties.getPatient_identifier_index_enabled()) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    Map<String, Set<IdentifierKey>> loadedIdentifiers = new HashMap<>();
+    List<?> rows = entityManager.createQuery(LOAD_QUERY).getResultList();
+    for (Object row : rows) {
+      Object[] columns = (Object[]) row;
+      String idPart = columns[3] != null ? (String) columns[3] : columns[2].toString();
+      loadedIdentifiers
+        .computeIfAbsent(idPart, key -> new HashSet<>())
+        .add(new IdentifierKey((String) columns[0], (String) columns[1]));
+    }
+
+    synchronized (this) {
+      loadedIdentifiers.forEach(
+        (idPart, identifiers) -> {
+          if (!writtenWhileLoading.contains(idPart)) {
+            put(idPart, identifiers);
+          }
+        });
+      writtenWhileLoading.clear();
+      loaded = true;
+    }
+    log.info(
+      "Loaded {} patient identifiers in {} ms",
+      rows.size(),
+      System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Returns the ids of the patients with the identifier, or null if the index is not available
+   * yet.
+   */
+  public Set<String> find(String system, String value) {
+    if (!loaded) {
+      return null;
+    }
+    Set<String> patients = patientsByIdentifier.get(new IdentifierKey(system, value));
+    return patients == null ? Collections.emptySet() : Set.copyOf(patients);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+  public void resourceCreated(IBaseResource theResource) {
+    afterCommit(theResource, false);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+  public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+    afterCommit(theNewResource, false);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+  public void resourceDeleted(IBaseResource theResource) {
+    afterCommit(theResource, true);
+  }
+
+  private void afterCommit(IBaseResource resource, boolean deleted) {
+    if (!(resource instanceof Patient)) {
+      return;
+    }
+
+    String idPart = resource.getIdElement().getIdPart();
+    Set<IdentifierKey> identifiers = new HashSet<>();
+    if (!deleted) {
+      for (Identifier identifier : ((Patient) resource).getIdentifier()) {
+        if (identifier.hasValue()) {
+          identifiers.add(new IdentifierKey(identifier.getSystem(), identifier.getValue()));
+        }
+      }
+    }
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            write(idPart, identifiers);
+          }
+        });
+    } else {
+      write(idPart, identifiers);
+    }
+  }
+
+  private synchronized void write(String idPart, Set<IdentifierKey> identifiers) {
+    if (!loaded) {
+      writtenWhileLoading.add(idPart);
+    }
+    put(idPart, identifiers);
+  }
+
+  /** Replaces the identifiers of the patient, removes the patient if there are none */
+  private synchronized void put(String idPart, Set<IdentifierKey> identifiers) {
+    Set<IdentifierKey> previous = identifiersByPatient.remove(idPart);
+    if (previous != null) {
+      for (IdentifierKey identifier : previous) {
+        patientsByIdentifier.computeIfPresent(
+          identifier,
+          (key, patients) -> {
+            patients.remove(idPart);
+            return patients.isEmpty() ? null : patients;
+          });
+      }
+    }
+
+    if (identifiers.isEmpty()) {
+      return;
+    }
+    identifiersByPatient.put(idPart, identifiers);
+    for (IdentifierKey identifier : identifiers) {
+      patientsByIdentifier
+        .computeIfAbsent(identifier, key -> ConcurrentHashMap.newKeySet())
+        .add(idPart);
+    }
+  }
+
+  @Value
+  private static class IdentifierKey {
+
+    String system;
+
+    String value;
+
+    IdentifierKey(String system, String value) {
+      this.system = StringUtils.defaultString(system);
+      this.value = value;
+    }
+  }
+}
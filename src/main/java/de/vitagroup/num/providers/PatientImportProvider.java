@@ -0,0 +1,208 @@
+package de.vitagroup.num.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import de.vitagroup.num.audit.BulkAuditor;
+import de.vitagroup.num.bulk.ImportJob;
+import de.vitagroup.num.bulk.PatientImporter;
+import de.vitagroup.num.interceptors.RequestPrincipal;
+import de.vitagroup.num.properties.BulkImportProperties;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code POST Patient/$import} with an NDJSON body of Patients, one per line. The stream is parsed
+ * line by line and written in chunks of {@code bulk.import.chunk-size} patients. The response, and
+ * {@code Patient/$import-status?job=}, report the progress of the job. A failed import is resumed
+ * by posting the same stream again with {@code ?job=<id>}; lines that are already committed are
+ * skipped without being parsed. The job keeps a SHA-256 digest of the committed lines, and a
+ * resumed stream whose skipped lines do not match it is rejected before anything is written.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PatientImportProvider {
+
+  public static final String IMPORT_OPERATION_NAME = "$import";
+
+  public static final String STATUS_OPERATION_NAME = "$import-status";
+
+  private static final String JOB_PARAMETER = "job";
+
+  private final PatientImporter patientImporter;
+
+  private final BulkAuditor bulkAuditor;
+
+  private final FhirContext fhirContext;
+
+  private final BulkImportProperties bulkImportProperties;
+
+  @Operation(name = IMPORT_OPERATION_NAME, type = Patient.class, manualRequest = true)
+  public Parameters importPatients(
+    HttpServletRequest theServletRequest, RequestDetails theRequestDetails) {
+    String[] jobParameter = theRequestDetails.getParameters().get(JOB_PARAMETER);
+    ImportJob job = patientImporter.start(jobParameter != null ? jobParameter[0] : null);
+    if (job.getStatus() == ImportJob.Status.COMPLETED) {
+      return toParameters(job);
+    }
+
+    String userId = RequestPrincipal.of(theRequestDetails).getUserName();
+    int chunkSize = Math.max(1, bulkImportProperties.getChunkSize());
+    IParser parser = fhirContext.newJsonParser();
+    long linesCommitted = job.getLinesCommitted();
+
+    try (BufferedReader reader =
+      new BufferedReader(
+        new InputStreamReader(theServletRequest.getInputStream(), StandardCharsets.UTF_8))) {
+      MessageDigest digest = DigestUtils.getSha256Digest();
+      for (long skipped = 0; skipped < linesCommitted; skipped++) {
+        String line = reader.readLine();
+        if (line == null) {
+          break;
+        }
+        update(digest, line);
+      }
+      if (job.getCommittedDigest() != null && !job.getCommittedDigest().equals(hex(digest))) {
+        throw new InvalidRequestException(
+          String.format(
+            "The stream does not start with the %d lines committed by import job %s",
+            linesCommitted, job.getId()));
+      }
+
+      List<Patient> chunk = new ArrayList<>(chunkSize);
+      long lines = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        update(digest, line);
+        if (StringUtils.isNotBlank(line)) {
+          chunk.add(parser.parseResource(Patient.class, line));
+        }
+        if (chunk.size() == chunkSize) {
+          linesCommitted =
+            writeChunk(job.getId(), linesCommitted, lines, hex(digest), chunk, userId);
+          chunk.clear();
+          lines = 0;
+        }
+      }
+      if (!chunk.isEmpty()) {
+        writeChunk(job.getId(), linesCommitted, lines, hex(digest), chunk, userId);
+      }
+    } catch (IOException | RuntimeException e) {
+      throw failed(job.getId(), linesCommitted, e);
+    }
+
+    return toParameters(patientImporter.complete(job.getId()));
+  }
+
+  @Operation(name = STATUS_OPERATION_NAME, type = Patient.class, idempotent = true)
+  public Parameters importStatus(
+    @OperationParam(name = JOB_PARAMETER, min = 1, max = 1) StringType job) {
+    return toParameters(patientImporter.find(job.getValue()));
+  }
+
+  /** Returns the number of lines committed after this chunk */
+  private long writeChunk(
+    String jobId,
+    long linesCommitted,
+    long lines,
+    String committedDigest,
+    List<Patient> chunk,
+    String userId) {
+    List<String> patientIds =
+      patientImporter.writeChunk(jobId, linesCommitted, lines, committedDigest, chunk);
+    bulkAuditor.patientsImported(userId, patientIds);
+    log.info(
+      "Import job {}: {} patients committed, {} lines read",
+      jobId,
+      patientIds.size(),
+      linesCommitted + lines);
+    return linesCommitted + lines;
+  }
+
+  private BaseServerResponseException failed(String jobId, long linesCommitted, Exception e) {
+    if (e instanceof PreconditionFailedException) {
+      // another request is writing this job, leave its status alone
+      return (PreconditionFailedException) e;
+    }
+
+    log.warn("Import job {} failed after {} committed lines", jobId, linesCommitted, e);
+    patientImporter.fail(jobId, e.getMessage());
+
+    if (e instanceof BaseServerResponseException) {
+      return (BaseServerResponseException) e;
+    }
+    String message =
+      String.format(
+        "Import job %s stopped after %d committed lines, resume it with %s=%s: %s",
+        jobId, linesCommitted, JOB_PARAMETER, jobId, e.getMessage());
+    if (e instanceof DataFormatException) {
+      return new UnprocessableEntityException(message);
+    }
+    return new InternalErrorException(message, e);
+  }
+
+  private static void update(MessageDigest digest, String line) {
+    digest.update(line.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) '\n');
+  }
+
+  /** Digest of the lines read so far, the running digest is not finished */
+  private static String hex(MessageDigest digest) {
+    try {
+      return Hex.encodeHexString(((MessageDigest) digest.clone()).digest());
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException("SHA-256 digest cannot be cloned", e);
+    }
+  }
+
+  private static Parameters toParameters(ImportJob job) {
+    Parameters parameters = new Parameters();
+    parameters.addParameter().setName(JOB_PARAMETER).setValue(new StringType(job.getId()));
+    parameters
+      .addParameter()
+      .setName("status")
+      .setValue(new StringType(job.getStatus().name()));
+    parameters
+      .addParameter()
+      .setName("linesCommitted")
+      .setValue(new IntegerType(Math.toIntExact(job.getLinesCommitted())));
+    parameters
+      .addParameter()
+      .setName("chunksCommitted")
+      .setValue(new IntegerType(Math.toIntExact(job.getChunksCommitted())));
+    parameters
+      .addParameter()
+      .setName("resourcesImported")
+      .setValue(new IntegerType(Math.toIntExact(job.getResourcesImported())));
+    if (job.getError() != null) {
+      parameters.addParameter().setName("error").setValue(new StringType(job.getError()));
+    }
+    return parameters;
+  }
+}
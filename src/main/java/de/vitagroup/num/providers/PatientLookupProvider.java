@@ -0,0 +1,96 @@
+package de.vitagroup.num.providers;
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code Patient/$lookup?identifier=system|value}, used by Keycloak to find the patient of a user
+ * at login. Answers from the {@link PatientIdentifierIndex} without a database query and returns
+ * the matching patients reduced to their id. The index only sees the writes of this node, so an
+ * identifier it does not know is searched in the database: the patient may just have been created
+ * through another node.
+ */
+@Component
+@RequiredArgsConstructor
+public class PatientLookupProvider {
+
+  public static final String OPERATION_NAME = "$lookup";
+
+  private static final int MAX_MATCHES = 10;
+
+  private final PatientIdentifierIndex patientIdentifierIndex;
+
+  private final DaoRegistry daoRegistry;
+
+  @Operation(name = OPERATION_NAME, type = Patient.class, idempotent = true)
+  public Bundle lookup(
+    @OperationParam(name = Patient.SP_IDENTIFIER, min = 1, max = 1) TokenParam identifier,
+    RequestDetails theRequestDetails) {
+    if (identifier == null
+      || StringUtils.isBlank(identifier.getValue())
+      || identifier.getSystem() == null) {
+      throw new InvalidRequestException("identifier must be given as system|value");
+    }
+
+    Set<String> patientIds =
+      patientIdentifierIndex.find(identifier.getSystem(), identifier.getValue());
+    if (patientIds == null || patientIds.isEmpty()) {
+      patientIds = search(identifier, theRequestDetails);
+    }
+
+    Bundle bundle = new Bundle();
+    bundle.setType(BundleType.SEARCHSET);
+    bundle.setTotal(patientIds.size());
+    patientIds.stream()
+      .limit(MAX_MATCHES)
+      .forEach(
+        patientId -> {
+          Patient patient = new Patient();
+          patient.setId(new IdType(Patient.class.getSimpleName(), patientId));
+          patient
+            .getMeta()
+            .addTag(Constants.TAG_SUBSETTED_SYSTEM_R4, Constants.TAG_SUBSETTED_CODE, null);
+          bundle
+            .addEntry()
+            .setFullUrl(
+              patient
+                .getIdElement()
+                .withServerBase(theRequestDetails.getFhirServerBase(), Patient.class.getSimpleName())
+                .getValue())
+            .setResource(patient);
+        });
+    return bundle;
+  }
+
+  /** Used while the index is still loading and for identifiers it does not know */
+  private Set<String> search(TokenParam identifier, RequestDetails theRequestDetails) {
+    SearchParameterMap searchParameterMap =
+      SearchParameterMap.newSynchronous(Patient.SP_IDENTIFIER, identifier);
+    searchParameterMap.setLoadSynchronousUpTo(MAX_MATCHES);
+    IBundleProvider result =
+      daoRegistry.getResourceDao(Patient.class).search(searchParameterMap, theRequestDetails);
+
+    Set<String> patientIds = new LinkedHashSet<>();
+    for (IBaseResource patient : result.getResources(0, MAX_MATCHES)) {
+      patientIds.add(patient.getIdElement().getIdPart());
+    }
+    return patientIds;
+  }
+}
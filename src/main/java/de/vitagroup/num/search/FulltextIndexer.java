@@ -0,0 +1,88 @@
+package de.vitagroup.num.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.dao.BaseHapiFhirDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import java.util.Collection;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.apache.lucene.index.IndexReader;
+import org.hibernate.search.indexes.IndexReaderAccessor;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes the Lucene documents of resources explicitly, independent of the Hibernate Search
+ * indexing strategy. The documents are flushed to the index before the calling transaction
+ * commits.
+ */
+@Component
+@RequiredArgsConstructor
+public class FulltextIndexer {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final DaoRegistry daoRegistry;
+
+  private final FhirContext fhirContext;
+
+  /** Indexes the current state of the resources, purging deleted and missing ones */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void index(Collection<Long> resourceIds) {
+    FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+    for (Long resourceId : resourceIds) {
+      ResourceTable entity = entityManager.find(ResourceTable.class, resourceId);
+      if (entity == null || entity.getDeleted() != null) {
+        fullTextEntityManager.purge(ResourceTable.class, resourceId);
+        continue;
+      }
+
+      IBaseResource resource =
+        daoRegistry.getResourceDao(entity.getResourceType()).toResource(entity, false);
+      index(fullTextEntityManager, entity, resource);
+    }
+    fullTextEntityManager.flushToIndexes();
+  }
+
+  /** Indexes resources that are already loaded together with their entities */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void index(Map<ResourceTable, IBaseResource> resourcesByEntity) {
+    FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+    resourcesByEntity.forEach(
+      (entity, resource) -> index(fullTextEntityManager, entity, resource));
+    fullTextEntityManager.flushToIndexes();
+  }
+
+  /**
+   * Opens the readers of the resource index, which otherwise happens on the first fulltext search.
+   *
+   * @return the number of resources in the index
+   */
+  @Transactional(readOnly = true)
+  public int openIndex() {
+    IndexReaderAccessor indexReaders =
+      Search.getFullTextEntityManager(entityManager).getSearchFactory().getIndexReaderAccessor();
+    IndexReader indexReader = indexReaders.open(ResourceTable.class);
+    try {
+      return indexReader.numDocs();
+    } finally {
+      indexReaders.close(indexReader);
+    }
+  }
+
+  private void index(
+    FullTextEntityManager fullTextEntityManager, ResourceTable entity, IBaseResource resource) {
+    // the fulltext fields are transient, they only exist while the resource is written
+    BaseHapiFhirDao.populateFullTextFields(fhirContext, resource, entity);
+    entity.preSave();
+    fullTextEntityManager.index(entity);
+  }
+}
@@ -0,0 +1,107 @@
+package de.vitagroup.num.search;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Durable queue of resources waiting for their fulltext index update. Entries are stored together
+ * with the resource write and removed in the transaction that indexes them. The index is written
+ * before that transaction commits, so a crash at any point leaves the entries in the queue and the
+ * resources are indexed again after the restart.
+ */
+@Component
+@RequiredArgsConstructor
+public class IndexQueue {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final FulltextIndexer fulltextIndexer;
+
+  /** Stores the entry as part of the currently running resource write transaction. */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void enqueue(Long resourceId) {
+    IndexQueueEntry entry = new IndexQueueEntry();
+    entry.setResourceId(resourceId);
+    entry.setQueuedAt(Instant.now());
+    entityManager.persist(entry);
+  }
+
+  /**
+   * Indexes the resources of the oldest entries and removes these entries. Entries queued while
+   * the batch is indexed stay in the queue, their resources are indexed again by the next batch.
+   *
+   * @return the number of entries removed
+   */
+  @Transactional
+  public int drain(int batchSize) {
+    List<IndexQueueEntry> batch =
+      entityManager
+        .createQuery("SELECT e FROM IndexQueueEntry e ORDER BY e.id", IndexQueueEntry.class)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .setMaxResults(batchSize)
+        .getResultList();
+
+    return index(batch);
+  }
+
+  /**
+   * Indexes the resources right away, for writes whose caller asked to read them back from the
+   * index. Runs in its own transaction, as it is called after the write has committed.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public int indexNow(Collection<Long> resourceIds) {
+    List<IndexQueueEntry> entries =
+      entityManager
+        .createQuery(
+          "SELECT e FROM IndexQueueEntry e WHERE e.resourceId IN (:resourceIds)",
+          IndexQueueEntry.class)
+        .setParameter("resourceIds", resourceIds)
+        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+        .getResultList();
+
+    return index(entries);
+  }
+
+  @Transactional(readOnly = true)
+  public long depth() {
+    return entityManager
+      .createQuery("SELECT COUNT(e) FROM IndexQueueEntry e", Long.class)
+      .getSingleResult();
+  }
+
+  /** Age of the oldest entry, zero if every committed resource is indexed. */
+  @Transactional(readOnly = true)
+  public Duration lag() {
+    Instant oldest =
+      entityManager
+        .createQuery("SELECT MIN(e.queuedAt) FROM IndexQueueEntry e", Instant.class)
+        .getSingleResult();
+    return oldest == null ? Duration.ZERO : Duration.between(oldest, Instant.now());
+  }
+
+  private int index(List<IndexQueueEntry> entries) {
+    if (entries.isEmpty()) {
+      return 0;
+    }
+
+    Set<Long> resourceIds = new LinkedHashSet<>();
+    entries.forEach(entry -> resourceIds.add(entry.getResourceId()));
+
+    fulltextIndexer.index(resourceIds);
+
+    entries.forEach(entityManager::remove);
+    return entries.size();
+  }
+}
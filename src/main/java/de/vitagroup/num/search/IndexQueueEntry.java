@@ -0,0 +1,41 @@
+package de.vitagroup.num.search;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Resource whose fulltext index is outdated. Rows are written in the same transaction as the
+ * resource and removed by the {@link IndexQueue} once the index contains the committed state.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(
+  name = "NUM_INDEX_QUEUE",
+  indexes = @Index(name = "IDX_INDEX_QUEUE_RESOURCE", columnList = "RESOURCE_ID"))
+public class IndexQueueEntry {
+
+  @Id
+  @SequenceGenerator(name = "SEQ_INDEX_QUEUE", sequenceName = "SEQ_INDEX_QUEUE")
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_INDEX_QUEUE")
+  @Column(name = "ID")
+  private Long id;
+
+  /** Primary key of the {@code HFJ_RESOURCE} row */
+  @Column(name = "RESOURCE_ID", nullable = false)
+  private Long resourceId;
+
+  @Column(name = "QUEUED_AT", nullable = false)
+  private Instant queuedAt;
+}
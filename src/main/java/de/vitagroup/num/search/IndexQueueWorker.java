@@ -0,0 +1,154 @@
+package de.vitagroup.num.search;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.dao.IDao;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import de.vitagroup.num.properties.SearchIndexingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Asynchronous fulltext indexing. With {@code search.indexing.async} Hibernate Search no longer
+ * indexes inside the write transaction; every committed create, update and delete puts the
+ * resource on the {@link IndexQueue} instead, which is drained here in batches. The worker runs
+ * on a thread of its own, so a large backlog, such as after a bulk import, does not hold up the
+ * tasks on the shared scheduler.
+ *
+ * <p>A write sent with {@value #READ_YOUR_WRITES_HEADER}{@code : true} is indexed before its
+ * response is returned, so a following {@code _content} or {@code _text} search finds it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexQueueWorker {
+
+  public static final String READ_YOUR_WRITES_HEADER = "X-Read-Your-Writes";
+
+  private final IndexQueue indexQueue;
+
+  private final IInterceptorService interceptorService;
+
+  private final SearchIndexingProperties searchIndexingProperties;
+
+  private final MeterRegistry meterRegistry;
+
+  private Timer batchTimer;
+
+  private Counter indexedCounter;
+
+  private ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  public void registerHooks() {
+    if (!searchIndexingProperties.isAsync()) {
+      return;
+    }
+    interceptorService.registerInterceptor(this);
+
+    batchTimer = meterRegistry.timer("search.index.queue.batch");
+    indexedCounter = meterRegistry.counter("search.index.queue.indexed");
+    Gauge.builder("search.index.queue.depth", indexQueue, IndexQueue::depth)
+      .description("Resources waiting for their fulltext index update")
+      .register(meterRegistry);
+    Gauge.builder("search.index.queue.lag", indexQueue, queue -> queue.lag().toMillis() / 1000d)
+      .description("Age of the oldest resource waiting for its fulltext index update")
+      .baseUnit("seconds")
+      .register(meterRegistry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!searchIndexingProperties.isAsync()) {
+      return;
+    }
+    scheduler =
+      Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("index-queue-"));
+    scheduler.scheduleWithFixedDelay(
+      this::drain, 0, searchIndexingProperties.getMaxDelayMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * Drains the queue until it is empty. Entries left behind by a crash are picked up by the first
+   * run after the restart.
+   */
+  private void drain() {
+    int batchSize = searchIndexingProperties.getBatchSize();
+    int drained;
+    try {
+      do {
+        drained = batchTimer.record(() -> indexQueue.drain(batchSize));
+        indexedCounter.increment(drained);
+      } while (drained == batchSize && !Thread.currentThread().isInterrupted());
+    } catch (RuntimeException e) {
+      // an exception would cancel the schedule, the entries stay queued for the next run
+      log.warn("Draining the index queue failed", e);
+    }
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+  public void resourceCreated(IBaseResource theResource, RequestDetails theRequest) {
+    enqueue(theResource, theRequest);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+  public void resourceUpdated(
+    IBaseResource theOldResource, IBaseResource theNewResource, RequestDetails theRequest) {
+    enqueue(theNewResource, theRequest);
+  }
+
+  @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+  public void resourceDeleted(IBaseResource theResource, RequestDetails theRequest) {
+    enqueue(theResource, theRequest);
+  }
+
+  private void enqueue(IBaseResource resource, RequestDetails request) {
+    Long resourceId = IDao.RESOURCE_PID.get((IAnyResource) resource);
+    if (resourceId == null) {
+      log.warn("{} has no resource id, it is not queued for indexing", resource.getIdElement());
+      return;
+    }
+    indexQueue.enqueue(resourceId);
+
+    if (request != null && Boolean.parseBoolean(request.getHeader(READ_YOUR_WRITES_HEADER))) {
+      TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            try {
+              indexedCounter.increment(indexQueue.indexNow(Collections.singleton(resourceId)));
+            } catch (RuntimeException e) {
+              // the write is committed and stays queued, the next drain indexes it
+              log.warn("Indexing resource {} right after its write failed", resourceId, e);
+            }
+          }
+        });
+    }
+  }
+}
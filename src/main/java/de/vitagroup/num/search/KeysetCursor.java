@@ -0,0 +1,46 @@
+package de.vitagroup.num.search;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import lombok.Value;
+
+/**
+ * Position of a keyset page: the sort and the sort key of the last resource returned. Encoded as
+ * an opaque token, clients only pass it back to get the next page.
+ */
+@Value
+public class KeysetCursor {
+
+  private static final String VERSION = "k1";
+
+  KeysetSort sort;
+
+  /** Last updated time of the last resource in epoch millis, unused for sorts by id */
+  long lastUpdated;
+
+  long resourceId;
+
+  public String encode() {
+    String value =
+      String.join(
+        ":", VERSION, sort.name(), Long.toString(lastUpdated), Long.toString(resourceId));
+    return Base64.getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static KeysetCursor decode(String token) {
+    try {
+      String[] parts =
+        new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+      if (parts.length != 4 || !VERSION.equals(parts[0])) {
+        throw new IllegalArgumentException(token);
+      }
+      return new KeysetCursor(
+        KeysetSort.valueOf(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+    } catch (IllegalArgumentException e) {
+      throw new InvalidRequestException("Invalid or expired page token");
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package de.vitagroup.num.search;
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.model.entity.ResourceHistoryTable;
+import ca.uhn.fhir.jpa.model.entity.ResourceTable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keyset (seek) paging over the current versions of the resources of one type. Each page is a
+ * single query that starts right after the sort key of the previous page's last resource, so the
+ * cost of a page does not depend on its depth and nothing is written to the search cache.
+ */
+@Component
+@RequiredArgsConstructor
+public class KeysetSearch {
+
+  private static final String PAGE_QUERY =
+    "SELECT h, r FROM ResourceHistoryTable h, ResourceTable r"
+      + " WHERE h.myResourceId = r.myId AND h.myResourceVersion = r.myVersion"
+      + " AND r.myResourceType = :type AND r.myDeleted IS NULL";
+
+  private static final String PATIENT_FILTER =
+    " AND EXISTS (SELECT l.myId FROM ResourceLink l"
+      + " WHERE l.mySourceResourcePid = r.myId AND l.mySourcePath = :patientPath"
+      + " AND l.myTargetResourcePid = :patientResourceId)";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final DaoRegistry daoRegistry;
+
+  /**
+   * Returns up to {@code count} resources following the cursor, or the first page if there is
+   * none. The resources are limited to those referencing the patient through {@code
+   * patientPath} if a patient is given.
+   *
+   * @param patientResourceId internal id of the patient, see {@link #findPatientResourceId}
+   */
+  @Transactional(readOnly = true)
+  public List<Match> page(
+    String resourceType,
+    KeysetSort sort,
+    KeysetCursor after,
+    String patientPath,
+    Long patientResourceId,
+    int count) {
+    StringBuilder jpql = new StringBuilder(PAGE_QUERY);
+    String comparison = sort.isDescending() ? "<" : ">";
+    if (after != null && sort.isByLastUpdated()) {
+      jpql.append(" AND (r.myUpdated ")
+        .append(comparison)
+        .append(" :lastUpdated OR (r.myUpdated = :lastUpdated AND r.myId ")
+        .append(comparison)
+        .append(" :resourceId))");
+    } else if (after != null) {
+      jpql.append(" AND r.myId ").append(comparison).append(" :resourceId");
+    }
+    if (patientPath != null) {
+      jpql.append(PATIENT_FILTER);
+    }
+    String direction = sort.isDescending() ? " DESC" : " ASC";
+    jpql.append(" ORDER BY ");
+    if (sort.isByLastUpdated()) {
+      jpql.append("r.myUpdated").append(direction).append(", ");
+    }
+    jpql.append("r.myId").append(direction);
+
+    Query query =
+      entityManager
+        .createQuery(jpql.toString())
+        .setParameter("type", resourceType)
+        .setMaxResults(count);
+    if (after != null) {
+      query.setParameter("resourceId", after.getResourceId());
+      if (sort.isByLastUpdated()) {
+        query.setParameter("lastUpdated", new Date(after.getLastUpdated()));
+      }
+    }
+    if (patientPath != null) {
+      query.setParameter("patientPath", patientPath);
+      query.setParameter("patientResourceId", patientResourceId);
+    }
+
+    IFhirResourceDao<?> dao = daoRegistry.getResourceDao(resourceType);
+    List<Match> entries = new ArrayList<>();
+    for (Object row : query.getResultList()) {
+      Object[] columns = (Object[]) row;
+      ResourceTable entity = (ResourceTable) columns[1];
+      IBaseResource resource = dao.toResource((ResourceHistoryTable) columns[0], false);
+      entries.add(
+        new Match(
+          resource,
+          new KeysetCursor(sort, entity.getUpdatedDate().getTime(), entity.getId())));
+    }
+    return entries;
+  }
+
+  /** Internal id of the patient with the logical id, null if there is no such patient */
+  @Transactional(readOnly = true)
+  public Long findPatientResourceId(String patientId) {
+    List<Long> resourceIds =
+      entityManager
+        .createQuery(
+          "SELECT f.myResourcePid FROM ForcedId f"
+            + " WHERE f.myResourceType = 'Patient' AND f.myForcedId = :patientId",
+          Long.class)
+        .setParameter("patientId", patientId)
+        .getResultList();
+    if (!resourceIds.isEmpty()) {
+      return resourceIds.get(0);
+    }
+    return StringUtils.isNumeric(patientId) ? NumberUtils.createLong(patientId) : null;
+  }
+
+  /** A resource of a page and the cursor pointing right after it */
+  @Value
+  public static class Match {
+
+    IBaseResource resource;
+
+    KeysetCursor cursor;
+  }
+}
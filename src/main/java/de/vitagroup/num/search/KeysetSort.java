@@ -0,0 +1,42 @@
+package de.vitagroup.num.search;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.hl7.fhir.instance.model.api.IAnyResource;
+
+/**
+ * Sorts supported by keyset paging. Every sort is unique thanks to the resource id as last key,
+ * so the next page starts strictly after the last resource of the previous one. {@code _id}
+ * orders by the internal resource id, i.e. by creation.
+ */
+@Getter
+@AllArgsConstructor
+public enum KeysetSort {
+  LAST_UPDATED(Constants.PARAM_LASTUPDATED, false),
+  LAST_UPDATED_DESC("-" + Constants.PARAM_LASTUPDATED, true),
+  ID(IAnyResource.SP_RES_ID, false),
+  ID_DESC("-" + IAnyResource.SP_RES_ID, true);
+
+  private final String parameterValue;
+
+  private final boolean descending;
+
+  public boolean isByLastUpdated() {
+    return this == LAST_UPDATED || this == LAST_UPDATED_DESC;
+  }
+
+  public static KeysetSort fromParameter(String value) {
+    if (value == null) {
+      return LAST_UPDATED;
+    }
+    for (KeysetSort sort : values()) {
+      if (sort.parameterValue.equals(value)) {
+        return sort;
+      }
+    }
+    throw new InvalidRequestException(
+      "Keyset paging only supports _sort=_lastUpdated, -_lastUpdated, _id or -_id");
+  }
+}
@@ -0,0 +1,195 @@
+package de.vitagroup.num.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import de.vitagroup.num.properties.JwksProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.net.URL;
+import java.security.Key;
+import java.security.PublicKey;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.OAuth2ResourceServerProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keycloak signing keys, fetched in the background and kept with a ready to use verifier per key
+ * id. Tokens are verified without touching Keycloak; an unknown key id (key rotation) triggers a
+ * synchronous refresh, shared by all requests waiting for it. Refreshes are at least {@code
+ * jwks.min-refresh-interval-millis} apart whatever key ids the tokens carry, so tokens with made up
+ * key ids cannot make the service hammer Keycloak. If Keycloak cannot be reached the last known
+ * keys stay in use.
+ */
+@Slf4j
+@Component
+public class JwkSetCache extends DefaultJWSVerifierFactory
+  implements JWSKeySelector<SecurityContext> {
+
+  private static final JWSAlgorithm ALGORITHM = JWSAlgorithm.RS256;
+
+  private final URL jwkSetUrl;
+
+  private final JwksProperties jwksProperties;
+
+  private final Timer refreshTimer;
+
+  private final Counter refreshFailureCounter;
+
+  private final Object refreshLock = new Object();
+
+  /** Start of the last refresh, successful or not, in {@link System#nanoTime()} */
+  private volatile long lastRefreshNanos;
+
+  private volatile boolean refreshed;
+
+  private volatile Map<String, SigningKey> signingKeys = Collections.emptyMap();
+
+  public JwkSetCache(
+    OAuth2ResourceServerProperties resourceServerProperties,
+    JwksProperties jwksProperties,
+    MeterRegistry meterRegistry)
+    throws IOException {
+    this.jwkSetUrl = new URL(resourceServerProperties.getJwt().getJwkSetUri());
+    this.jwksProperties = jwksProperties;
+
+    refreshTimer = meterRegistry.timer("jwks.refresh");
+    refreshFailureCounter = meterRegistry.counter("jwks.refresh.failures");
+    Gauge.builder("jwks.keys", this, cache -> cache.signingKeys.size())
+      .description("Signing keys currently known")
+      .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void init() {
+    // a failure here is not fatal, keys are fetched again on the first token
+    refresh();
+  }
+
+  @Scheduled(
+    initialDelayString = "${jwks.refresh-interval-millis:300000}",
+    fixedDelayString = "${jwks.refresh-interval-millis:300000}")
+  public void scheduledRefresh() {
+    synchronized (refreshLock) {
+      refresh();
+    }
+  }
+
+  @Override
+  public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+    if (!ALGORITHM.equals(header.getAlgorithm())) {
+      return Collections.emptyList();
+    }
+
+    SigningKey signingKey = signingKey(header.getKeyID());
+    return signingKey == null
+      ? Collections.emptyList()
+      : Collections.singletonList(signingKey.getKey());
+  }
+
+  @Override
+  public JWSVerifier createJWSVerifier(JWSHeader header, Key key) throws JOSEException {
+    SigningKey signingKey = signingKeys.get(header.getKeyID());
+    if (signingKey != null && signingKey.getKey() == key) {
+      return signingKey.getVerifier();
+    }
+    return super.createJWSVerifier(header, key);
+  }
+
+  private SigningKey signingKey(String keyId) {
+    if (keyId == null) {
+      return null;
+    }
+
+    SigningKey signingKey = signingKeys.get(keyId);
+    if (signingKey != null) {
+      return signingKey;
+    }
+
+    if (!refreshDue()) {
+      return null;
+    }
+
+    // requests with a new key id wait here for the one refresh done on their behalf
+    synchronized (refreshLock) {
+      signingKey = signingKeys.get(keyId);
+      if (signingKey == null && refreshDue()) {
+        refresh();
+        signingKey = signingKeys.get(keyId);
+      }
+      return signingKey;
+    }
+  }
+
+  private boolean refreshDue() {
+    return !refreshed
+      || System.nanoTime() - lastRefreshNanos
+        >= TimeUnit.MILLISECONDS.toNanos(jwksProperties.getMinRefreshIntervalMillis());
+  }
+
+  private void refresh() {
+    lastRefreshNanos = System.nanoTime();
+    refreshed = true;
+    try {
+      signingKeys = refreshTimer.recordCallable(this::loadSigningKeys);
+    } catch (Exception e) {
+      refreshFailureCounter.increment();
+      log.warn(
+        "Could not refresh signing keys from {}, keeping {} known keys",
+        jwkSetUrl,
+        signingKeys.size(),
+        e);
+    }
+  }
+
+  private Map<String, SigningKey> loadSigningKeys()
+    throws IOException, ParseException, JOSEException {
+    JWKSet jwkSet =
+      JWKSet.load(
+        jwkSetUrl,
+        jwksProperties.getConnectTimeoutMillis(),
+        jwksProperties.getReadTimeoutMillis(),
+        jwksProperties.getSizeLimitBytes());
+
+    Map<String, SigningKey> keys = new HashMap<>();
+    for (JWK jwk : jwkSet.getKeys()) {
+      if (jwk.getKeyID() != null
+        && jwk instanceof RSAKey
+        && (jwk.getKeyUse() == null || KeyUse.SIGNATURE.equals(jwk.getKeyUse()))) {
+        PublicKey publicKey = ((RSAKey) jwk).toPublicKey();
+        JWSVerifier verifier =
+          super.createJWSVerifier(new JWSHeader.Builder(ALGORITHM).build(), publicKey);
+        keys.put(jwk.getKeyID(), new SigningKey(publicKey, verifier));
+      }
+    }
+    return Collections.unmodifiableMap(keys);
+  }
+
+  @Value
+  private static class SigningKey {
+
+    PublicKey key;
+
+    JWSVerifier verifier;
+  }
+}
@@ -0,0 +1,114 @@
+package de.vitagroup.num.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.vitagroup.num.properties.AuditProperties;
+import de.vitagroup.num.properties.AuditProperties.Marshaller;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.openehealth.ipf.commons.audit.AuditContext;
+import org.openehealth.ipf.commons.audit.codes.EventActionCode;
+import org.openehealth.ipf.commons.audit.codes.EventOutcomeIndicator;
+import org.openehealth.ipf.commons.audit.event.PatientRecordBuilder;
+import org.openehealth.ipf.commons.audit.marshal.SerializationStrategy;
+import org.openehealth.ipf.commons.audit.model.ActiveParticipantType;
+import org.openehealth.ipf.commons.audit.model.AuditMessage;
+import org.openehealth.ipf.commons.audit.model.TypeValuePairType;
+import org.openehealth.ipf.commons.audit.types.EventType;
+
+/**
+ * The streaming marshaller against the JDOM one it replaces: every message is marshalled with
+ * both and the bytes have to be the same, so the JDOM strategy serves as the golden file.
+ */
+class AuditMarshallingTest {
+
+  private static final String HL7_CODING_SYSTEM =
+    "http://terminology.hl7.org/CodeSystem/audit-event-type";
+
+  private final AuditContext jdomContext = auditContext(Marshaller.JDOM);
+
+  private final AuditContext streamingContext = auditContext(Marshaller.STREAMING);
+
+  @Test
+  void writesAPatientReadLikeTheJdomMarshaller() throws IOException {
+    assertSameOutput(
+      message(
+        EventOutcomeIndicator.Success,
+        "Patient read",
+        EventActionCode.Read,
+        "read",
+        "keycloak-user")
+        .addPatient("42", "Erika Mustermann", null)
+        .getMessage());
+  }
+
+  @Test
+  void writesAnAggregatedSearchLikeTheJdomMarshaller() throws IOException {
+    PatientRecordBuilder builder =
+      message(
+        EventOutcomeIndicator.Success,
+        "Patients disclosed by search",
+        EventActionCode.Read,
+        "search-type",
+        "keycloak-user");
+    for (int i = 0; i < 500; i++) {
+      builder.addPatient(String.valueOf(i), StringUtils.EMPTY, null);
+    }
+    assertSameOutput(builder.getMessage());
+  }
+
+  @Test
+  void escapesAndNormalizesLikeTheJdomMarshaller() throws IOException {
+    assertSameOutput(
+      message(
+        EventOutcomeIndicator.MinorFailure,
+        "  Patient <write> & \"update\"\n\tfailed  ",
+        EventActionCode.Update,
+        "update",
+        "user \"a\" <b> & 'c'\td\ne\rf")
+        .addPatient(
+          "Patient/7",
+          " M\u00fcller &\t <Sohn>\r\n ",
+          List.of(new TypeValuePairType("version", "3")))
+        .addPatient("8", " \t ", null)
+        .getMessage());
+  }
+
+  private void assertSameOutput(AuditMessage auditMessage) throws IOException {
+    assertThat(marshal(streamingContext.getSerializationStrategy(), auditMessage))
+      .isEqualTo(marshal(jdomContext.getSerializationStrategy(), auditMessage));
+  }
+
+  private PatientRecordBuilder message(
+    EventOutcomeIndicator outcomeIndicator,
+    String description,
+    EventActionCode eventActionCode,
+    String eventText,
+    String userId) {
+    return new PatientRecordBuilder(
+      outcomeIndicator,
+      description,
+      eventActionCode,
+      EventType.of(eventText, HL7_CODING_SYSTEM, eventText))
+      .addActiveParticipant(new ActiveParticipantType(userId, true))
+      .setAuditSource(jdomContext);
+  }
+
+  private static String marshal(SerializationStrategy strategy, AuditMessage auditMessage)
+    throws IOException {
+    StringWriter writer = new StringWriter();
+    strategy.marshal(auditMessage, writer, false);
+    return writer.toString();
+  }
+
+  private static AuditContext auditContext(Marshaller marshaller) {
+    AuditProperties auditProperties = new AuditProperties();
+    auditProperties.setHost("localhost");
+    auditProperties.setPort(514);
+    auditProperties.setMarshaller(marshaller);
+    return new AuditConfig(auditProperties).auditContext();
+  }
+}
@@ -0,0 +1,111 @@
+package de.vitagroup.num.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class CompressionFilterTest {
+
+  private static final int MIN_RESPONSE_SIZE = 2048;
+
+  private static final String CONTENT_TYPE = "application/fhir+json";
+
+  private final CompressionFilter filter =
+    new CompressionFilter(MIN_RESPONSE_SIZE, List.of(CONTENT_TYPE));
+
+  @Test
+  void negotiatesTheCodingWithTheHighestQuality() {
+    assertThat(CompressionFilter.negotiate("gzip, deflate")).isEqualTo("gzip");
+    assertThat(CompressionFilter.negotiate("gzip;q=0.5, deflate")).isEqualTo("deflate");
+    assertThat(CompressionFilter.negotiate("*")).isEqualTo("gzip");
+    assertThat(CompressionFilter.negotiate("identity")).isNull();
+    assertThat(CompressionFilter.negotiate(null)).isNull();
+  }
+
+  @Test
+  void wildcardDoesNotOverrideAnExplicitlyRefusedCoding() {
+    assertThat(CompressionFilter.negotiate("gzip;q=0, *")).isEqualTo("deflate");
+    assertThat(CompressionFilter.negotiate("*, gzip;q=0, deflate;q=0")).isNull();
+    assertThat(CompressionFilter.negotiate("deflate, *;q=0.5")).isEqualTo("deflate");
+    assertThat(CompressionFilter.accepts("gzip;q=0, *", "gzip")).isFalse();
+    assertThat(CompressionFilter.accepts("br, *;q=0.1", "gzip")).isTrue();
+  }
+
+  @Test
+  void flushBeforeTheDecisionDoesNotCommitTheHeaders() throws Exception {
+    String body = StringUtils.repeat("{\"resourceType\":\"Patient\"}", 200);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilterInternal(
+      request("gzip"),
+      response,
+      (filteredRequest, filteredResponse) -> {
+        filteredResponse.setContentType(CONTENT_TYPE);
+        ServletOutputStream out = filteredResponse.getOutputStream();
+        out.write(body.substring(0, 100).getBytes(StandardCharsets.UTF_8));
+        filteredResponse.flushBuffer();
+        assertThat(filteredResponse.isCommitted()).isFalse();
+
+        out.write(body.substring(100).getBytes(StandardCharsets.UTF_8));
+        filteredResponse.flushBuffer();
+        assertThat(filteredResponse.isCommitted()).isTrue();
+      });
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+  }
+
+  @Test
+  void sendsSmallResponsesAsTheyAre() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilterInternal(
+      request("gzip"),
+      response,
+      (filteredRequest, filteredResponse) -> {
+        filteredResponse.setContentType(CONTENT_TYPE);
+        filteredResponse.getWriter().write("{}");
+        filteredResponse.flushBuffer();
+      });
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getContentLength()).isEqualTo(2);
+    assertThat(response.getContentAsString()).isEqualTo("{}");
+  }
+
+  @Test
+  void keepsTheClientsAcceptEncodingForTheApplication() throws Exception {
+    filter.doFilterInternal(
+      request("gzip;q=0.8, deflate"),
+      new MockHttpServletResponse(),
+      (filteredRequest, filteredResponse) -> {
+        HttpServletRequest request = (HttpServletRequest) filteredRequest;
+        assertThat(request.getHeader(HttpHeaders.ACCEPT_ENCODING)).isEqualTo("identity");
+        assertThat(CompressionFilter.acceptEncoding(request)).isEqualTo("gzip;q=0.8, deflate");
+      });
+  }
+
+  private static MockHttpServletRequest request(String acceptEncoding) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/fhir/Patient");
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    return request;
+  }
+
+  private static String gunzip(byte[] compressed) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
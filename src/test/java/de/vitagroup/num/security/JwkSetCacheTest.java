@@ -0,0 +1,159 @@
+package de.vitagroup.num.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import com.sun.net.httpserver.HttpServer;
+import de.vitagroup.num.properties.JwksProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.OAuth2ResourceServerProperties;
+
+/** Key rotation against a local JWKS endpoint standing in for Keycloak. */
+class JwkSetCacheTest {
+
+  private static final String JWKS_PATH = "/auth/realms/master/protocol/openid-connect/certs";
+
+  private final AtomicInteger fetches = new AtomicInteger();
+
+  private HttpServer jwksServer;
+
+  private volatile JWKSet publishedKeys;
+
+  private RSAKey currentKey;
+
+  private RSAKey rotatedKey;
+
+  @BeforeEach
+  void startJwksServer() throws JOSEException, IOException {
+    currentKey = new RSAKeyGenerator(2048).keyID("current").keyUse(KeyUse.SIGNATURE).generate();
+    rotatedKey = new RSAKeyGenerator(2048).keyID("rotated").keyUse(KeyUse.SIGNATURE).generate();
+    publishedKeys = new JWKSet(currentKey);
+
+    jwksServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    jwksServer.createContext(
+      JWKS_PATH,
+      exchange -> {
+        fetches.incrementAndGet();
+        byte[] body = publishedKeys.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+          responseBody.write(body);
+        }
+      });
+    jwksServer.start();
+  }
+
+  @AfterEach
+  void stopJwksServer() {
+    jwksServer.stop(0);
+  }
+
+  @Test
+  void verifiesTokensOfARotatedKeyAfterOneRefresh() throws Exception {
+    DefaultJWTProcessor<SecurityContext> processor = processor(jwkSetCache(0));
+    assertThat(processor.process(token(currentKey), null).getSubject()).isEqualTo("user");
+    assertThat(fetches).hasValue(1);
+
+    publishedKeys = new JWKSet(rotatedKey);
+    assertThat(processor.process(token(rotatedKey), null).getSubject()).isEqualTo("user");
+    assertThat(processor.process(token(rotatedKey), null).getSubject()).isEqualTo("user");
+    assertThat(fetches).hasValue(2);
+  }
+
+  @Test
+  void refreshesAtMostOncePerMinimumIntervalWhateverTheKeyIds() throws Exception {
+    DefaultJWTProcessor<SecurityContext> processor = processor(jwkSetCache(60000));
+
+    for (int i = 0; i < 100; i++) {
+      SignedJWT token = token(rotatedKey, "made-up-" + i);
+      assertThatThrownBy(() -> processor.process(token, null))
+        .isInstanceOf(BadJOSEException.class);
+    }
+    assertThat(fetches).hasValue(1);
+  }
+
+  @Test
+  void refreshesForAnUnknownKeyOnceTheMinimumIntervalPassed() throws Exception {
+    DefaultJWTProcessor<SecurityContext> processor = processor(jwkSetCache(200));
+    publishedKeys = new JWKSet(rotatedKey);
+
+    assertThatThrownBy(() -> processor.process(token(rotatedKey), null))
+      .isInstanceOf(BadJOSEException.class);
+    assertThat(fetches).hasValue(1);
+
+    Thread.sleep(300);
+    assertThat(processor.process(token(rotatedKey), null).getSubject()).isEqualTo("user");
+    assertThat(fetches).hasValue(2);
+  }
+
+  @Test
+  void keepsTheKnownKeysWhileTheEndpointIsDown() throws Exception {
+    JwkSetCache jwkSetCache = jwkSetCache(0);
+    DefaultJWTProcessor<SecurityContext> processor = processor(jwkSetCache);
+    jwksServer.stop(0);
+
+    jwkSetCache.scheduledRefresh();
+    assertThat(processor.process(token(currentKey), null).getSubject()).isEqualTo("user");
+    assertThatThrownBy(() -> processor.process(token(rotatedKey), null))
+      .isInstanceOf(BadJOSEException.class);
+  }
+
+  private JwkSetCache jwkSetCache(long minRefreshIntervalMillis) throws IOException {
+    OAuth2ResourceServerProperties resourceServerProperties = new OAuth2ResourceServerProperties();
+    resourceServerProperties
+      .getJwt()
+      .setJwkSetUri("http://localhost:" + jwksServer.getAddress().getPort() + JWKS_PATH);
+    JwksProperties jwksProperties = new JwksProperties();
+    jwksProperties.setMinRefreshIntervalMillis(minRefreshIntervalMillis);
+
+    JwkSetCache jwkSetCache =
+      new JwkSetCache(resourceServerProperties, jwksProperties, new SimpleMeterRegistry());
+    jwkSetCache.init();
+    return jwkSetCache;
+  }
+
+  /** Set up like the decoder of {@code ApplicationSecurity} */
+  private static DefaultJWTProcessor<SecurityContext> processor(JwkSetCache jwkSetCache) {
+    DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+    processor.setJWSKeySelector(jwkSetCache);
+    processor.setJWSVerifierFactory(jwkSetCache);
+    processor.setJWTClaimsSetVerifier((claims, context) -> {});
+    return processor;
+  }
+
+  private static SignedJWT token(RSAKey signingKey) throws JOSEException {
+    return token(signingKey, signingKey.getKeyID());
+  }
+
+  private static SignedJWT token(RSAKey signingKey, String keyId) throws JOSEException {
+    SignedJWT token =
+      new SignedJWT(
+        new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build(),
+        new JWTClaimsSet.Builder().subject("user").build());
+    token.sign(new RSASSASigner(signingKey));
+    return token;
+  }
+}